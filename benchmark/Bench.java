@@ -0,0 +1,95 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Minimal benchmark harness: warm up,then run an operation for a fixed time on the current thread and report
+ * ops/s and bytes allocated per op.
+ */
+final class Bench {
+
+    interface Op {
+        /**
+         * @return any value derived from the work,consumed so the JIT can't drop it.
+         */
+        Object run() throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final long ops;
+        final long nanos;
+        final long allocatedBytes;
+
+        Result(String name, long ops, long nanos, long allocatedBytes) {
+            this.name = name;
+            this.ops = ops;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double opsPerSecond() {
+            return ops * 1e9 / nanos;
+        }
+
+        double bytesPerOp() {
+            return allocatedBytes < 0 ? Double.NaN : (double) allocatedBytes / ops;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-36s %14.1f ops/s %12.1f B/op %10.1f MB/s alloc",
+                    name, opsPerSecond(), bytesPerOp(), allocatedBytes < 0 ? Double.NaN
+                            : allocatedBytes * 1e9 / nanos / (1024 * 1024));
+        }
+    }
+
+    private static volatile int sink;
+
+    private final long warmupMillis;
+    private final long measureMillis;
+
+    Bench(long warmupMillis, long measureMillis) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+    }
+
+    Result run(String name, Op op) throws Exception {
+        loop(op, warmupMillis);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long ops = loop(op, measureMillis);
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        return new Result(name, ops, nanos, allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore);
+    }
+
+    private static long loop(Op op, long millis) throws Exception {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long ops = 0;
+        int hash = 0;
+        do {
+            //check the clock once per batch,it costs more than most ops here.
+            for (int i = 0; i < 64; i++) {
+                Object result = op.run();
+                hash += result == null ? 0 : System.identityHashCode(result);
+            }
+            ops += 64;
+        } while (System.nanoTime() < deadline);
+        sink += hash;
+        return ops;
+    }
+
+    /**
+     * Bytes allocated by the current thread so far,-1 if the jvm can't tell.
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,232 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks of the request path,run before every upgrade to compare releases.
+ * <pre>
+ * javac -d out src/*.java benchmark/*.java
+ * java -cp out LiteHttpBenchmark [name filter] [-Dbench.warmup=ms] [-Dbench.measure=ms] [-Dbench.clients=n]
+ * </pre>
+ * Micro benchmarks report ops/s and bytes allocated per op on the benchmark thread.The end-to-end one sends
+ * GET requests with {@link HttpTask#execute()} from several client threads to an embedded
+ * {@link HttpServer} and reports throughput,latency percentiles and allocation of the client threads.
+ */
+public final class LiteHttpBenchmark {
+
+    private static final String URL = "https://api.example.com:8443/v1/catalog/items?page=2&size=50#top";
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    public static void main(String[] args) throws Exception {
+        String filter = args.length > 0 ? args[0] : "";
+        long warmup = Long.getLong("bench.warmup", 1000);
+        long measure = Long.getLong("bench.measure", 3000);
+        int clients = Integer.getInteger("bench.clients", 8);
+        Bench bench = new Bench(warmup, measure);
+
+        LinkedHashMap<String, Bench.Op> micro = new LinkedHashMap<>();
+        micro.put("RequestUrl.parse", () -> RequestUrl.parse(URL));
+        final RequestUrl url = RequestUrl.parse(URL);
+        micro.put("RequestUrl.toString", url::toString);
+        micro.put("MediaType.get", () -> MediaType.get(CONTENT_TYPE));
+        micro.put("RequestHeaders.build", () -> new RequestHeaders.Builder()
+                .add("Accept", "application/json")
+                .add("Authorization", "Bearer 0123456789abcdef")
+                .add("User-Agent", "LiteHttp")
+                .add("X-Request-Id", "42")
+                .build());
+        final RequestHeaders defaults = new RequestHeaders.Builder()
+                .add("Accept", "application/json")
+                .add("Authorization", "Bearer 0123456789abcdef")
+                .add("User-Agent", "LiteHttp")
+                .build();
+        micro.put("RequestHeaders.derive", () -> defaults.newBuilder().add("X-Request-Id", "42").build());
+        final LinkedHashMap<String, String> params = new LinkedHashMap<>();
+        params.put("q", "lite http");
+        params.put("page", "2");
+        params.put("size", "50");
+        params.put("sort", "name,asc");
+        micro.put("Util.buildQueryString", () -> Util.buildQueryString(new StringBuilder(64), params));
+        final byte[] chunk = new byte[1024];
+        final MemoryOutputStream stream = new MemoryOutputStream(64 * 1024);
+        micro.put("MemoryOutputStream.write 64k", () -> {
+            stream.reset(64 * 1024);
+            for (int i = 0; i < 64; i++) {
+                stream.write(chunk, 0, chunk.length);
+            }
+            return stream;
+        });
+        micro.put("HttpFilterChain walk(8 filters)", filterChainOp());
+
+        System.out.println("# warmup " + warmup + "ms,measure " + measure + "ms");
+        for (java.util.Map.Entry<String, Bench.Op> entry : micro.entrySet()) {
+            if (entry.getKey().contains(filter)) {
+                System.out.println(bench.run(entry.getKey(), entry.getValue()));
+            }
+        }
+        if ("end-to-end".contains(filter) || filter.isEmpty()) {
+            endToEnd(warmup, measure, clients);
+        }
+        System.exit(0);
+    }
+
+    private static Bench.Op filterChainOp() {
+        final LiteHttp http = new LiteHttp();
+        final HttpRequest request = new HttpRequest.Builder().url(URL).get().build();
+        final HttpTask task = http.obtainTask(request);
+        final List<HttpFilter> filters = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            filters.add(new HttpFilter() {
+                @Override
+                public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
+                    return false;
+                }
+
+                @Override
+                public void onResponse(HttpFilterChain chain, HttpResponse response) {
+                }
+            });
+        }
+        final HttpResponse response = new HttpResponse();
+        //answers instead of the network.
+        filters.add(new HttpFilter() {
+            @Override
+            public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
+                chain.handleResponse(response);
+                return true;
+            }
+
+            @Override
+            public void onResponse(HttpFilterChain chain, HttpResponse response) {
+            }
+        });
+        final HttpFilter[] pipeline = filters.toArray(new HttpFilter[0]);
+        return () -> {
+            HttpFilterChain chain = new HttpFilterChain(task.new AsyncTask("bench", null), pipeline);
+            chain.handleRequest(request);
+            return chain;
+        };
+    }
+
+    private static void endToEnd(long warmup, long measure, int clients) throws Exception {
+        final byte[] body = new byte[512];
+        Arrays.fill(body, (byte) 'x');
+        //headers and body are separate writes,don't let Nagle hold the body for a delayed ack.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    //drain
+                }
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(Math.max(4, clients));
+        server.setExecutor(serverExecutor);
+        server.start();
+        try {
+            final LiteHttp http = new LiteHttp().setCacheSize(0);
+            final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/bench";
+            runClients(http, url, clients, warmup, null, null);
+            long[][] latencies = new long[clients][];
+            AtomicLong allocated = new AtomicLong();
+            long start = System.nanoTime();
+            long ops = runClients(http, url, clients, measure, latencies, allocated);
+            long nanos = System.nanoTime() - start;
+
+            int total = 0;
+            for (long[] l : latencies) {
+                total += l.length;
+            }
+            long[] all = new long[total];
+            int pos = 0;
+            for (long[] l : latencies) {
+                System.arraycopy(l, 0, all, pos, l.length);
+                pos += l.length;
+            }
+            Arrays.sort(all);
+            System.out.println(String.format("%-36s %14.1f ops/s %12.1f B/op  p50 %.1fus p99 %.1fus p99.9 %.1fus (%d clients)",
+                    "end-to-end GET", ops * 1e9 / nanos, allocated.get() < 0 ? Double.NaN : (double) allocated.get() / ops,
+                    percentile(all, 0.5) / 1e3, percentile(all, 0.99) / 1e3, percentile(all, 0.999) / 1e3, clients));
+        } finally {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return requests done by all clients.
+     */
+    private static long runClients(final LiteHttp http, final String url, int clients, final long millis,
+                                   final long[][] latencies, final AtomicLong allocated) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(clients);
+        final AtomicLong ops = new AtomicLong();
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            Thread thread = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                long allocatedBefore = Bench.allocatedBytes();
+                long deadline = System.nanoTime() + millis * 1000000L;
+                byte[] buffer = new byte[1024];
+                try {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        HttpRequest request = new HttpRequest.Builder().url(url).get().build();
+                        HttpResponse response = http.obtainTask(request).execute();
+                        if (response.data != null) {
+                            while (response.data.read(buffer) != -1) {
+                                //consume
+                            }
+                            response.data.close();
+                        }
+                        if (response.code != 200) {
+                            throw new IllegalStateException("unexpected response " + response.code);
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                ops.addAndGet(count);
+                if (latencies != null) {
+                    latencies[client] = Arrays.copyOf(samples, count);
+                    long allocatedAfter = Bench.allocatedBytes();
+                    if (allocatedBefore < 0 || allocated.get() < 0) {
+                        allocated.set(-1);
+                    } else {
+                        allocated.addAndGet(allocatedAfter - allocatedBefore);
+                    }
+                }
+                done.countDown();
+            }, "bench-client-" + c);
+            thread.start();
+        }
+        done.await();
+        return ops.get();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Staggered parallel connects to the addresses of a host,Happy Eyeballs(RFC 8305) style.
+ * <p>
+ * Addresses are tried alternating ipv6 and ipv4,starting with the family of the first one.The next attempt
+ * starts when the previous one failed or didn't finish within the attempt delay,the first connected socket wins.
+ * All attempts run non blocking on the calling thread.
+ */
+final class AddressRacer {
+
+    private AddressRacer() {
+    }
+
+    /**
+     * @param connectTimeout for all the attempts,in millis,0 for none.
+     * @param failed         receives the addresses which refused or failed.
+     * @return connected channel in blocking mode.
+     */
+    static SocketChannel connect(List<InetAddress> addresses, int port, int connectTimeout, long attemptDelayNanos,
+                                 List<InetAddress> failed) throws IOException {
+        if (addresses.size() == 1) {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().connect(new InetSocketAddress(addresses.get(0), port), connectTimeout);
+                return channel;
+            } catch (IOException | RuntimeException e) {
+                Util.closeQuietly(channel);
+                failed.add(addresses.get(0));
+                throw e;
+            }
+        }
+        List<InetAddress> ordered = interleave(addresses);
+        long deadline = connectTimeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout) : 0;
+        List<SocketChannel> attempts = new ArrayList<>(ordered.size());
+        SocketChannel winner = null;
+        IOException failure = null;
+        Selector selector = Selector.open();
+        try {
+            int next = 0;
+            long nextAttemptAt = System.nanoTime();
+            int pending = 0;
+            while (winner == null) {
+                long now = System.nanoTime();
+                if (next < ordered.size() && (pending == 0 || now - nextAttemptAt >= 0)) {
+                    InetAddress address = ordered.get(next++);
+                    nextAttemptAt = now + attemptDelayNanos;
+                    SocketChannel channel = SocketChannel.open();
+                    attempts.add(channel);
+                    try {
+                        channel.configureBlocking(false);
+                        if (channel.connect(new InetSocketAddress(address, port))) {
+                            winner = channel;
+                        } else {
+                            channel.register(selector, SelectionKey.OP_CONNECT, address);
+                            pending++;
+                        }
+                    } catch (IOException e) {
+                        failure = addFailure(failure, e);
+                        failed.add(address);
+                        Util.closeQuietly(channel);
+                    }
+                    continue;
+                }
+                if (pending == 0) {
+                    throw failure != null ? failure : new IOException("no address to connect");
+                }
+                long waitNanos = next < ordered.size() ? nextAttemptAt - now : Long.MAX_VALUE;
+                if (deadline != 0) {
+                    if (deadline - now <= 0) {
+                        SocketTimeoutException timeout = new SocketTimeoutException("connect timed out");
+                        if (failure != null) {
+                            timeout.addSuppressed(failure);
+                        }
+                        throw timeout;
+                    }
+                    waitNanos = Math.min(waitNanos, deadline - now);
+                }
+                if (waitNanos == Long.MAX_VALUE) {
+                    selector.select();
+                } else {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                }
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted connecting");
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            winner = channel;
+                            break;
+                        }
+                    } catch (IOException e) {
+                        failure = addFailure(failure, e);
+                        failed.add((InetAddress) key.attachment());
+                        key.cancel();
+                        Util.closeQuietly(channel);
+                        pending--;
+                        //start the next one at once.
+                        nextAttemptAt = System.nanoTime();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            //deregisters the channels,the winner can go blocking after.
+            Util.closeQuietly(selector);
+            for (SocketChannel channel : attempts) {
+                if (channel != winner) {
+                    Util.closeQuietly(channel);
+                }
+            }
+        }
+        try {
+            winner.configureBlocking(true);
+        } catch (IOException e) {
+            Util.closeQuietly(winner);
+            throw e;
+        }
+        return winner;
+    }
+
+    private static IOException addFailure(IOException first, IOException e) {
+        if (first == null) {
+            return e;
+        }
+        first.addSuppressed(e);
+        return first;
+    }
+
+    /**
+     * Alternate address families,starting with the family of the first address.
+     */
+    static List<InetAddress> interleave(List<InetAddress> addresses) {
+        List<InetAddress> first = new ArrayList<>();
+        List<InetAddress> second = new ArrayList<>();
+        boolean firstIsIpv6 = addresses.get(0) instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            ((address instanceof Inet6Address) == firstIsIpv6 ? first : second).add(address);
+        }
+        List<InetAddress> ordered = new ArrayList<>(addresses.size());
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                ordered.add(first.get(i));
+            }
+            if (i < second.size()) {
+                ordered.add(second.get(i));
+            }
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Run many requests with at most {@code parallelism} of them in flight,on the request pool of {@link LiteHttp}.
+ * <p>
+ * Every request gets a response,a request which failed has a code of {@link HttpConst},one cancelled or
+ * not finished before the deadline gets {@link HttpConst#REQUEST_CANCELED} or {@link HttpConst#REQUEST_TIMEOUT}.
+ */
+public final class Batch {
+
+    /**
+     * Called as responses arrive,on the thread which completed the request.
+     */
+    public interface Listener {
+        void onResponse(int index, HttpResponse response);
+    }
+
+    private final LiteHttp mHTTP;
+    private final HttpRequest[] requests;
+    private final int parallelism;
+    private long timeoutNanos;
+    private Listener listener;
+
+    private final HttpTask[] tasks;
+    private final AtomicReferenceArray<HttpResponse> responses;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final AtomicInteger launchRequests = new AtomicInteger();
+    private final CompletableFuture<List<HttpResponse>> result = new CompletableFuture<>();
+    private volatile int stopCode;
+    private volatile TimerWheel.Timeout deadline;
+    private boolean started;
+
+    Batch(LiteHttp liteHttp, Collection<HttpRequest> requests, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism <= 0: " + parallelism);
+        }
+        this.mHTTP = liteHttp;
+        this.requests = requests.toArray(new HttpRequest[0]);
+        this.parallelism = parallelism;
+        this.tasks = new HttpTask[this.requests.length];
+        this.responses = new AtomicReferenceArray<>(this.requests.length);
+        this.remaining = new AtomicInteger(this.requests.length);
+    }
+
+    /**
+     * Requests not finished within {@code timeout} after start are cancelled.
+     */
+    public Batch timeout(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Receive each response as it completes,set before start.
+     */
+    public Batch listener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Start the batch.
+     *
+     * @return completed with all responses in the order of the requests.
+     */
+    public CompletableFuture<List<HttpResponse>> executeAsync() {
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("Already Executed");
+            }
+            started = true;
+        }
+        if (requests.length == 0) {
+            result.complete(Collections.<HttpResponse>emptyList());
+            return result;
+        }
+        if (timeoutNanos > 0) {
+            //listeners and dependent stages run on the request pool,not on the timer thread.
+            deadline = mHTTP.timer().schedule(
+                    () -> mHTTP.executePool().execute(() -> stop(HttpConst.REQUEST_TIMEOUT)),
+                    timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        for (int i = 0, count = Math.min(parallelism, requests.length); i < count; i++) {
+            launch();
+        }
+        return result;
+    }
+
+    /**
+     * Start the batch and wait for all responses,in the order of the requests.
+     */
+    public List<HttpResponse> execute() {
+        CompletableFuture<List<HttpResponse>> future = executeAsync();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            return future.join();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Cancel the requests which haven't finished.
+     */
+    public void cancel() {
+        stop(HttpConst.REQUEST_CANCELED);
+    }
+
+    /**
+     * Indexes of the requests which failed,were cancelled or timed out so far.
+     */
+    public List<Integer> failedIndexes() {
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0, length = responses.length(); i < length; i++) {
+            HttpResponse response = responses.get(i);
+            if (response != null && isFailure(response)) {
+                failed.add(i);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Returns true if no response was received for the request of {@code response}.
+     */
+    public static boolean isFailure(HttpResponse response) {
+        return response.code >= HttpConst.REQUEST_PROTOCOL_ERROR;
+    }
+
+    public int size() {
+        return requests.length;
+    }
+
+    private void stop(int code) {
+        synchronized (this) {
+            if (stopCode != 0) {
+                return;
+            }
+            stopCode = code;
+        }
+        //requests not started yet.
+        int from = nextIndex.getAndSet(requests.length);
+        for (int i = from; i < requests.length; i++) {
+            complete(i, stoppedResponse(requests[i], code));
+        }
+        for (int i = 0; i < from && i < requests.length; i++) {
+            HttpTask task;
+            synchronized (tasks) {
+                task = tasks[i];
+            }
+            if (task != null && responses.get(i) == null) {
+                task.cancel();
+            }
+        }
+    }
+
+    /**
+     * Start the next request,callers never run launches nested in each other.
+     */
+    private void launch() {
+        if (launchRequests.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            launchNext();
+        } while (launchRequests.decrementAndGet() != 0);
+    }
+
+    private void launchNext() {
+        int index = nextIndex.getAndIncrement();
+        if (index >= requests.length) {
+            return;
+        }
+        HttpTask task = mHTTP.obtainTask(requests[index]);
+        synchronized (tasks) {
+            tasks[index] = task;
+        }
+        task.executeAsync().whenComplete((response, error) -> {
+            if (response == null) {
+                int code = stopCode;
+                response = error instanceof CancellationException
+                        ? stoppedResponse(requests[index], code != 0 ? code : HttpConst.REQUEST_CANCELED)
+                        : stoppedResponse(requests[index], HttpConst.REQUEST_UNKNOWN_ERROR);
+            }
+            complete(index, response);
+            launch();
+        });
+        //stopped while starting,missed by stop().
+        if (stopCode != 0) {
+            task.cancel();
+        }
+    }
+
+    private void complete(int index, HttpResponse response) {
+        if (!responses.compareAndSet(index, null, response)) {
+            return;
+        }
+        synchronized (tasks) {
+            tasks[index] = null;
+        }
+        Listener current = listener;
+        if (current != null) {
+            try {
+                current.onResponse(index, response);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        if (remaining.decrementAndGet() == 0) {
+            TimerWheel.Timeout timer = deadline;
+            if (timer != null) {
+                timer.cancel();
+            }
+            HttpResponse[] ordered = new HttpResponse[responses.length()];
+            for (int i = 0; i < ordered.length; i++) {
+                ordered[i] = responses.get(i);
+            }
+            result.complete(Collections.unmodifiableList(Arrays.asList(ordered)));
+        }
+    }
+
+    private static HttpResponse stoppedResponse(HttpRequest request, int code) {
+        HttpResponse response = new HttpResponse();
+        response.request = request;
+        response.code = code;
+        response.message = (code == HttpConst.REQUEST_TIMEOUT ? "request timeout,"
+                : code == HttpConst.REQUEST_CANCELED ? "request canceled," : "request on unknown error,")
+                + request.url();
+        return response;
+    }
+}
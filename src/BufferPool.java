@@ -0,0 +1,202 @@
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable {@link MemoryOutputStream} for response bodies,safe to use from any thread.
+ * <p>
+ * Buffers are grouped in power of two size classes from {@link #MIN_CLASS_SIZE} to {@link #MAX_CLASS_SIZE}.
+ * Each thread keeps one buffer per class,the rest go to a shared lock-free stack of the class.
+ * At most {@code maxRetainedBytes} are kept in total,buffers grown beyond the largest class are dropped.
+ */
+final class BufferPool {
+
+    /**
+     * MemoryOutputStream grows by 16k steps.
+     */
+    static final int MIN_CLASS_SIZE = 16 * 1024;
+    static final int MAX_CLASS_SIZE = 1024 * 1024;
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_CLASS_SIZE / MIN_CLASS_SIZE) + 1;
+
+    static final BufferPool DEFAULT = new BufferPool(8 * 1024 * 1024);
+
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final List<ConcurrentLinkedDeque<PooledBuffer>> sharedBuffers = new ArrayList<>(CLASS_COUNT);
+    private final ThreadLocal<LocalCache> localCache = new ThreadLocal<>();
+    /**
+     * all thread local caches,buffers of a dead thread are reclaimed from here.
+     */
+    private final ConcurrentLinkedQueue<LocalCache> localCaches = new ConcurrentLinkedQueue<>();
+
+    BufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            sharedBuffers.add(new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * Returns an empty buffer of at least {@code capacity} bytes,close its last input stream to recycle it.
+     */
+    MemoryOutputStream obtain(int capacity) {
+        capacity = Math.max(capacity, MIN_CLASS_SIZE);
+        if (capacity > MAX_CLASS_SIZE) {
+            //never retained,see recycle.
+            PooledBuffer buffer = new PooledBuffer(this, capacity);
+            buffer.reset(capacity);
+            return buffer;
+        }
+        int index = ceilClass(capacity);
+        PooledBuffer buffer = null;
+        LocalCache cache = localCache(false);
+        if (cache != null) {
+            buffer = cache.buffers[index];
+            cache.buffers[index] = null;
+        }
+        if (buffer == null) {
+            buffer = sharedBuffers.get(index).pollFirst();
+        }
+        if (buffer == null) {
+            buffer = new PooledBuffer(this, MIN_CLASS_SIZE << index);
+        } else {
+            retainedBytes.addAndGet(-buffer.capacity());
+        }
+        buffer.reset(capacity);
+        return buffer;
+    }
+
+    void recycle(PooledBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (capacity < MIN_CLASS_SIZE || capacity > MAX_CLASS_SIZE) {
+            //trim oversized buffers.
+            return;
+        }
+        if (!reserve(capacity) && (reclaimDeadThreads() == 0 || !reserve(capacity))) {
+            return;
+        }
+        int index = floorClass(capacity);
+        LocalCache cache = localCache(true);
+        if (cache != null && cache.buffers[index] == null) {
+            cache.buffers[index] = buffer;
+            return;
+        }
+        sharedBuffers.get(index).offerFirst(buffer);
+    }
+
+    long retainedBytes() {
+        return retainedBytes.get();
+    }
+
+    private boolean reserve(int bytes) {
+        while (true) {
+            long retained = retainedBytes.get();
+            if (retained + bytes > maxRetainedBytes) {
+                return false;
+            }
+            if (retainedBytes.compareAndSet(retained, retained + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drop buffers cached by threads which have died.
+     *
+     * @return bytes released.
+     */
+    private long reclaimDeadThreads() {
+        long released = 0;
+        for (LocalCache cache : localCaches) {
+            Thread owner = cache.owner.get();
+            if (owner != null && owner.isAlive()) {
+                continue;
+            }
+            //owner terminated,the thread which removes it releases its buffers.
+            if (!localCaches.remove(cache)) {
+                continue;
+            }
+            for (int i = 0; i < CLASS_COUNT; i++) {
+                PooledBuffer buffer = cache.buffers[i];
+                if (buffer != null) {
+                    cache.buffers[i] = null;
+                    released += buffer.capacity();
+                }
+            }
+        }
+        if (released > 0) {
+            retainedBytes.addAndGet(-released);
+        }
+        return released;
+    }
+
+    private LocalCache localCache(boolean create) {
+        LocalCache cache = localCache.get();
+        if (cache == null && create && !isVirtual(Thread.currentThread())) {
+            //virtual threads are short lived,they only use the shared buffers.
+            cache = new LocalCache(Thread.currentThread());
+            localCache.set(cache);
+            //threads come and go with the request pool,forget the dead ones.
+            reclaimDeadThreads();
+            localCaches.offer(cache);
+        }
+        return cache;
+    }
+
+    private static int ceilClass(int capacity) {
+        return 32 - Integer.numberOfLeadingZeros((capacity - 1) / MIN_CLASS_SIZE);
+    }
+
+    private static int floorClass(int capacity) {
+        return 31 - Integer.numberOfLeadingZeros(capacity / MIN_CLASS_SIZE);
+    }
+
+    private static final Method IS_VIRTUAL = isVirtualMethod();
+
+    private static Method isVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static final class LocalCache {
+        final WeakReference<Thread> owner;
+        final PooledBuffer[] buffers = new PooledBuffer[CLASS_COUNT];
+
+        LocalCache(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+    }
+
+    static final class PooledBuffer extends MemoryOutputStream {
+        private final BufferPool pool;
+
+        PooledBuffer(BufferPool pool, int initialCapacity) {
+            super(initialCapacity);
+            this.pool = pool;
+        }
+
+        @Override
+        public void onClose() {
+            pool.recycle(this);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.List;
+
+/**
+ * Cache-Control directives of a request or a response.
+ * <p>
+ * Only the directives a private client cache cares about are kept,see rfc7234 section 5.2.
+ */
+final class CacheControl {
+
+    final boolean noCache;
+    final boolean noStore;
+    final boolean mustRevalidate;
+    final boolean isPublic;
+    final boolean isPrivate;
+    final boolean onlyIfCached;
+    /**
+     * seconds, -1 if absent.
+     */
+    final int maxAgeSeconds;
+    final int maxStaleSeconds;
+    final int minFreshSeconds;
+
+    private CacheControl(boolean noCache, boolean noStore, boolean mustRevalidate, boolean isPublic,
+                         boolean isPrivate, boolean onlyIfCached, int maxAgeSeconds,
+                         int maxStaleSeconds, int minFreshSeconds) {
+        this.noCache = noCache;
+        this.noStore = noStore;
+        this.mustRevalidate = mustRevalidate;
+        this.isPublic = isPublic;
+        this.isPrivate = isPrivate;
+        this.onlyIfCached = onlyIfCached;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.maxStaleSeconds = maxStaleSeconds;
+        this.minFreshSeconds = minFreshSeconds;
+    }
+
+    static CacheControl parse(List<String> values, String pragma) {
+        boolean noCache = false;
+        boolean noStore = false;
+        boolean mustRevalidate = false;
+        boolean isPublic = false;
+        boolean isPrivate = false;
+        boolean onlyIfCached = false;
+        int maxAge = -1;
+        int maxStale = -1;
+        int minFresh = -1;
+
+        if (values != null) {
+            for (String value : values) {
+                if (Util.strIsEmpty(value)) {
+                    continue;
+                }
+                int pos = 0;
+                int limit = value.length();
+                while (pos < limit) {
+                    int end = value.indexOf(',', pos);
+                    if (end == -1) {
+                        end = limit;
+                    }
+                    int start = Util.skipLeadingAsciiWhitespace(value, pos, end);
+                    int stop = Util.skipTrailingAsciiWhitespace(value, start, end);
+                    pos = end + 1;
+                    if (start == stop) {
+                        continue;
+                    }
+                    String directive;
+                    String parameter = null;
+                    int eq = value.indexOf('=', start);
+                    if (eq != -1 && eq < stop) {
+                        directive = value.substring(start, Util.skipTrailingAsciiWhitespace(value, start, eq));
+                        int paramStart = Util.skipLeadingAsciiWhitespace(value, eq + 1, stop);
+                        parameter = value.substring(paramStart, stop);
+                        if (parameter.length() > 1 && parameter.startsWith("\"") && parameter.endsWith("\"")) {
+                            parameter = parameter.substring(1, parameter.length() - 1);
+                        }
+                    } else {
+                        directive = value.substring(start, stop);
+                    }
+
+                    if ("no-cache".equalsIgnoreCase(directive)) {
+                        noCache = true;
+                    } else if ("no-store".equalsIgnoreCase(directive)) {
+                        noStore = true;
+                    } else if ("must-revalidate".equalsIgnoreCase(directive)) {
+                        mustRevalidate = true;
+                    } else if ("public".equalsIgnoreCase(directive)) {
+                        isPublic = true;
+                    } else if ("private".equalsIgnoreCase(directive)) {
+                        isPrivate = true;
+                    } else if ("only-if-cached".equalsIgnoreCase(directive)) {
+                        onlyIfCached = true;
+                    } else if ("max-age".equalsIgnoreCase(directive)) {
+                        maxAge = parseSeconds(parameter, -1);
+                    } else if ("max-stale".equalsIgnoreCase(directive)) {
+                        //max-stale without value means any staleness is accepted.
+                        maxStale = parseSeconds(parameter, Integer.MAX_VALUE);
+                    } else if ("min-fresh".equalsIgnoreCase(directive)) {
+                        minFresh = parseSeconds(parameter, -1);
+                    }
+                }
+            }
+        }
+        if (!noCache && pragma != null && pragma.toLowerCase().contains("no-cache")) {
+            noCache = true;
+        }
+        return new CacheControl(noCache, noStore, mustRevalidate, isPublic, isPrivate, onlyIfCached,
+                maxAge, maxStale, minFresh);
+    }
+
+    private static int parseSeconds(String value, int defaultValue) {
+        if (Util.strIsEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            long seconds = Long.parseLong(value);
+            if (seconds > Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            } else if (seconds < 0) {
+                return 0;
+            }
+            return (int) seconds;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -1,14 +1,96 @@
 
 
-class CacheHttpFilter implements HttpFilter{
+/**
+ * Serve fresh responses from {@link ResponseCache},revalidate stale ones with If-None-Match / If-Modified-Since
+ * and store cacheable network responses.
+ * <p>
+ * The cached candidate is kept between {@link #onRequest} and {@link #onResponse} as state of the chain.
+ */
+class CacheHttpFilter implements HttpFilter {
+
+    private final ResponseCache cache;
+
+    /**
+     * A request whose network response should be stored.
+     */
+    private static final class Exchange {
+        final HttpRequest cacheRequest;
+        final long sentMillis;
+        /**
+         * stale entry under validation.
+         */
+        ResponseCache.Entry candidate;
+
+        Exchange(HttpRequest cacheRequest, long sentMillis) {
+            this.cacheRequest = cacheRequest;
+            this.sentMillis = sentMillis;
+        }
+    }
+
+    CacheHttpFilter(ResponseCache cache) {
+        this.cache = cache;
+    }
 
     @Override
     public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
+        if (cache == null) {
+            return false;
+        }
+        if (!"GET".equalsIgnoreCase(request.method)) {
+            if (!"HEAD".equalsIgnoreCase(request.method) && !"OPTIONS".equalsIgnoreCase(request.method)) {
+                //unsafe method,the cached representation is out of date.
+                cache.remove(request);
+            }
+            return false;
+        }
+        //caller handles the validation itself.
+        if (request.headers.get("If-None-Match") != null || request.headers.get("If-Modified-Since") != null) {
+            return false;
+        }
+        CacheControl requestControl = ResponseCache.requestCacheControl(request);
+        if (requestControl.noStore) {
+            return false;
+        }
+        long sentMillis = System.currentTimeMillis();
+        ResponseCache.Entry entry = cache.get(request);
+        if (entry != null && entry.isFresh(requestControl, sentMillis)) {
+            cache.trackHit();
+            chain.handleResponse(entry.response(request));
+            return true;
+        }
+        cache.trackNetwork();
+        Exchange exchange = new Exchange(request, sentMillis);
+        chain.state(exchange);
+        if (entry != null && entry.hasValidators()) {
+            exchange.candidate = entry;
+            chain.replaceRequest(entry.conditionalRequest(request));
+        }
         return false;
     }
 
     @Override
     public void onResponse(HttpFilterChain chain, HttpResponse response) {
+        Exchange exchange = (Exchange) chain.state();
+        if (cache == null || exchange == null) {
+            return;
+        }
+        long receivedMillis = System.currentTimeMillis();
+        if (exchange.candidate != null && response.code == 304) {
+            cache.update(exchange.candidate, response, exchange.sentMillis, receivedMillis);
+            return;
+        }
+        if (!cache.put(exchange.cacheRequest, response, exchange.sentMillis, receivedMillis) && invalidates(response)) {
+            cache.remove(exchange.cacheRequest);
+        }
+    }
 
+    /**
+     * A response the server says must not be stored replaces the cached one,one which just wasn't stored,such
+     * as a streaming body or an error,leaves it.
+     */
+    private static boolean invalidates(HttpResponse response) {
+        return response.code >= 200 && response.code < 400
+                && (CacheControl.parse(response.headers("Cache-Control"), null).noStore
+                || "*".equals(response.header("Vary")));
     }
 }
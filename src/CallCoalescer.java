@@ -0,0 +1,190 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Identical GET/HEAD requests in flight,only the first one goes to the network and the others wait for its
+ * response,see {@link CoalescingHttpFilter}.
+ * <p>
+ * Requests are identical if method,url and the values of {@code keyHeaders} are equal.Every waiter gets its own
+ * {@link HttpResponse} reading the shared buffered body.
+ */
+class CallCoalescer {
+
+    static final String[] DEFAULT_KEY_HEADERS = {
+            "Accept", "Accept-Encoding", "Accept-Language", "Authorization", "Cookie", "Range"
+    };
+    /**
+     * Part of every key whatever the key headers are,a conditional or no-cache request must not get the
+     * response of a plain one,such as a 304 without body.
+     */
+    private static final String[] CONDITIONAL_HEADERS = {
+            "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range", "Cache-Control",
+            "Pragma"
+    };
+
+    private final String[] keyHeaders;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    CallCoalescer(String[] keyHeaders) {
+        this.keyHeaders = keyHeaders == null ? DEFAULT_KEY_HEADERS : keyHeaders.clone();
+    }
+
+    /**
+     * Returns the key of {@code request},or null if it must not be coalesced.
+     */
+    String key(HttpRequest request) {
+        String method = request.method.toUpperCase(Locale.US);
+        //a streaming body can't be shared.
+        if (!"GET".equals(method) && !"HEAD".equals(method) || request.streaming) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(128).append(method).append(' ').append(request.url());
+        appendHeaders(key, request, keyHeaders);
+        appendHeaders(key, request, CONDITIONAL_HEADERS);
+        return key.toString();
+    }
+
+    private static void appendHeaders(StringBuilder key, HttpRequest request, String[] names) {
+        for (String name : names) {
+            String value = request.headers.get(name);
+            if (value != null) {
+                key.append('\n').append(name).append(':').append(value);
+            }
+        }
+    }
+
+    /**
+     * Wait for the flight of {@code key} if there is one.
+     *
+     * @return null if {@code waiter} joined a flight,otherwise the new flight {@code waiter} leads.
+     */
+    Flight joinOrLead(String key, CoalescingHttpFilter.Waiter waiter) {
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight(key);
+                if (flights.putIfAbsent(key, flight) == null) {
+                    return flight;
+                }
+                continue;
+            }
+            if (flight.join(waiter)) {
+                return null;
+            }
+            //landed just now.
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * The leader of {@code flight} got {@code response},share it with the waiters.
+     */
+    void land(Flight flight, HttpResponse response) {
+        flights.remove(flight.key, flight);
+        List<CoalescingHttpFilter.Waiter> waiters = flight.close();
+        if (waiters.isEmpty()) {
+            return;
+        }
+        if (response.code == HttpConst.REQUEST_CANCELED) {
+            //leader never reached the network,the next waiter goes instead.
+            relaunch(flight.key, waiters);
+            return;
+        }
+        byte[] body = null;
+        IOException error = null;
+        if (response.data != null) {
+            try {
+                body = Util.readFully(response.data);
+                response.data = new ByteArrayInputStream(body);
+            } catch (IOException e) {
+                e.printStackTrace();
+                response.data = null;
+                error = e;
+            }
+        }
+        Map<String, List<String>> headers = copyHeaders(response.heders);
+        for (CoalescingHttpFilter.Waiter waiter : waiters) {
+            HttpResponse shared = new HttpResponse();
+            shared.request = waiter.request();
+            if (error != null) {
+                shared.code = HttpConst.REQUEST_IO_ERROR;
+                shared.message = "request on io error," + waiter.request().url();
+            } else {
+                shared.code = response.code;
+                shared.message = response.message;
+                shared.heders = headers;
+                shared.data = body != null ? new ByteArrayInputStream(body) : null;
+            }
+            waiter.deliver(shared);
+        }
+    }
+
+    private void relaunch(String key, List<CoalescingHttpFilter.Waiter> waiters) {
+        List<CoalescingHttpFilter.Waiter> leaders = new ArrayList<>(1);
+        for (CoalescingHttpFilter.Waiter waiter : waiters) {
+            if (waiter.canceled()) {
+                waiter.deliver(waiter.canceledResponse());
+                continue;
+            }
+            //the first one leads,the rest join it.
+            Flight flight = joinOrLead(key, waiter);
+            if (flight != null) {
+                waiter.lead(flight);
+                leaders.add(waiter);
+            }
+        }
+        for (CoalescingHttpFilter.Waiter leader : leaders) {
+            leader.resume();
+        }
+    }
+
+    int inFlightCount() {
+        return flights.size();
+    }
+
+    private static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+        if (headers == null) {
+            return null;
+        }
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getValue() != null) {
+                copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    static final class Flight {
+        final String key;
+        private List<CoalescingHttpFilter.Waiter> waiters = new ArrayList<>();
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return false if the flight has landed already.
+         */
+        synchronized boolean join(CoalescingHttpFilter.Waiter waiter) {
+            if (waiters == null) {
+                return false;
+            }
+            waiters.add(waiter);
+            return true;
+        }
+
+        synchronized List<CoalescingHttpFilter.Waiter> close() {
+            List<CoalescingHttpFilter.Waiter> landed = waiters;
+            waiters = null;
+            return landed == null ? Collections.emptyList() : landed;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Coalesce identical requests in flight with {@link CallCoalescer},enabled by
+ * {@link LiteHttp#setCoalescing(boolean, String...)}.
+ * <p>
+ * The first request of a key goes on to the network,the following ones stop here and get their response when
+ * the first one comes back,on its thread.
+ */
+class CoalescingHttpFilter implements HttpFilter {
+
+    private final CallCoalescer coalescer;
+
+    CoalescingHttpFilter(CallCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    @Override
+    public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
+        String key = coalescer.key(request);
+        if (key == null) {
+            return false;
+        }
+        Waiter waiter = new Waiter(chain, request);
+        chain.state(waiter);
+        waiter.flight = coalescer.joinOrLead(key, waiter);
+        return waiter.flight == null;
+    }
+
+    @Override
+    public void onResponse(HttpFilterChain chain, HttpResponse response) {
+        Waiter waiter = (Waiter) chain.state();
+        CallCoalescer.Flight landed = waiter == null ? null : waiter.flight;
+        if (landed != null) {
+            waiter.flight = null;
+            coalescer.land(landed, response);
+        }
+    }
+
+    /**
+     * A request at this filter,waiting for a flight or leading it.
+     */
+    static final class Waiter {
+        private final HttpFilterChain chain;
+        private final HttpRequest request;
+        /**
+         * non null if this request leads the flight.
+         */
+        private CallCoalescer.Flight flight;
+
+        Waiter(HttpFilterChain chain, HttpRequest request) {
+            this.chain = chain;
+            this.request = request;
+        }
+
+        HttpRequest request() {
+            return request;
+        }
+
+        boolean canceled() {
+            return chain.mTask.canceled();
+        }
+
+        HttpResponse canceledResponse() {
+            return chain.mTask.task().canceledResponse();
+        }
+
+        void deliver(HttpResponse response) {
+            chain.handleResponse(response);
+        }
+
+        /**
+         * Lead {@code flight} instead of a cancelled request,call {@link #resume()} after.
+         */
+        void lead(CallCoalescer.Flight flight) {
+            this.flight = flight;
+        }
+
+        /**
+         * Go on to the network on the request pool,not on the thread of the leader which gave up.
+         */
+        void resume() {
+            chain.resume();
+        }
+    }
+}
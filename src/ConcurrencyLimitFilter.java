@@ -0,0 +1,38 @@
+/**
+ * Keep the requests of each host within the adaptive limit of {@link ConcurrencyLimiter},enabled by
+ * {@link LiteHttp#setAdaptiveConcurrency(int, int)}.
+ * <p>
+ * A request over the limit of its host waits here without a thread until one in flight finishes,one which finds
+ * the waiting queue full gets {@link HttpConst#REQUEST_LIMITED} at once.
+ */
+class ConcurrencyLimitFilter implements HttpFilter {
+
+    private final ConcurrencyLimiter limiter;
+
+    ConcurrencyLimitFilter(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
+        ConcurrencyLimiter.Permit permit = limiter.acquire(request.url.host());
+        if (permit == null) {
+            HttpResponse response = new HttpResponse();
+            response.request = request;
+            response.code = HttpConst.REQUEST_LIMITED;
+            response.message = "request limited," + request.url();
+            chain.handleResponse(response);
+            return true;
+        }
+        chain.state(permit);
+        return !permit.granted.isDone() && chain.suspendUntil(permit.granted);
+    }
+
+    @Override
+    public void onResponse(HttpFilterChain chain, HttpResponse response) {
+        ConcurrencyLimiter.Permit permit = (ConcurrencyLimiter.Permit) chain.state();
+        if (permit != null) {
+            limiter.release(permit, response);
+        }
+    }
+}
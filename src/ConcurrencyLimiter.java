@@ -0,0 +1,250 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adaptive concurrency limits of a {@link LiteHttp},one for all requests and one per host,see
+ * {@link ConcurrencyLimitFilter}.
+ * <p>
+ * A limit follows the gradient between the no load and the current round trip time:it grows by about its
+ * square root while latency stays within {@link Limit#TOLERANCE} of the no load one and shrinks as the
+ * latency rises,errors and overload responses cut it by {@link Limit#BACKOFF} once per round trip.The global
+ * limit is the running limit of the request pool,a host over its limit queues requests without holding a
+ * thread,and sheds them once {@code maxQueue} are waiting.
+ */
+final class ConcurrencyLimiter {
+
+    /**
+     * Gradient limit,guarded by its monitor.
+     */
+    static final class Limit {
+        static final double TOLERANCE = 1.5;
+        static final double BACKOFF = 0.9;
+        private static final double SMOOTHING = 0.2;
+        /**
+         * samples after which the minimum of the last window becomes the no load round trip time,so it follows
+         * a slower path too.
+         */
+        private static final int WINDOW = 500;
+        /**
+         * samples the current round trip time averages over,single slow responses don't cut the limit.
+         */
+        private static final int SHORT_WINDOW = 10;
+
+        private final int minLimit;
+        private final int maxLimit;
+        private double limit;
+        private double smoothedRttNanos;
+        private double minRttNanos;
+        private double windowMinNanos = Double.MAX_VALUE;
+        private int windowSamples;
+        private long lastBackoffNanos;
+
+        Limit(int initialLimit, int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        }
+
+        synchronized int limit() {
+            return (int) limit;
+        }
+
+        /**
+         * @param inFlight requests in flight when the sample was taken,a limit doesn't grow while it isn't used.
+         * @return the new limit.
+         */
+        synchronized int onSample(long rttNanos, int inFlight, boolean dropped) {
+            long now = System.nanoTime();
+            if (dropped) {
+                //once per round trip,the requests in flight saw the same overload.
+                if (now - lastBackoffNanos >= minRttNanos) {
+                    lastBackoffNanos = now;
+                    limit = Math.max(minLimit, limit * BACKOFF);
+                }
+                return (int) limit;
+            }
+            double sample = Math.max(1, rttNanos);
+            double rtt = smoothedRttNanos == 0 ? sample : smoothedRttNanos + (sample - smoothedRttNanos) / SHORT_WINDOW;
+            smoothedRttNanos = rtt;
+            windowMinNanos = Math.min(windowMinNanos, rtt);
+            if (minRttNanos == 0 || rtt < minRttNanos) {
+                minRttNanos = rtt;
+            }
+            if (++windowSamples == WINDOW) {
+                minRttNanos = windowMinNanos;
+                windowMinNanos = Double.MAX_VALUE;
+                windowSamples = 0;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRttNanos / rtt));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            if (newLimit > limit && inFlight * 2 < limit) {
+                return (int) limit;
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+            return (int) limit;
+        }
+    }
+
+    /**
+     * Requests of one host.
+     */
+    private static final class Host {
+        final String name;
+        final Limit limit;
+        int inFlight;
+        final ArrayDeque<Permit> waiters = new ArrayDeque<>();
+        /**
+         * dropped from the hosts,a request which found it just before takes a new one.
+         */
+        boolean removed;
+
+        Host(String name, Limit limit) {
+            this.name = name;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Place of a request within the limit of its host,{@link #granted} completes once it has it.
+     */
+    static final class Permit {
+        private final Host host;
+        final CompletableFuture<Void> granted = new CompletableFuture<>();
+        private long startNanos;
+
+        private Permit(Host host) {
+            this.host = host;
+        }
+    }
+
+    /**
+     * hosts kept with their limits,idle ones are dropped once there are more.
+     */
+    private static final int MAX_HOSTS = 256;
+
+    private final LiteHttp liteHttp;
+    private final Limit global;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    ConcurrencyLimiter(LiteHttp liteHttp, int initialLimit, int maxLimit, int maxQueue) {
+        if (maxLimit <= 0 || maxQueue < 0) {
+            throw new IllegalArgumentException("invalid limit " + maxLimit + "," + maxQueue);
+        }
+        this.liteHttp = liteHttp;
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.global = new Limit(initialLimit, 1, maxLimit);
+    }
+
+    int globalLimit() {
+        return global.limit();
+    }
+
+    /**
+     * Current limit of {@code host},-1 if it had no requests yet or was dropped while idle.
+     */
+    int hostLimit(String host) {
+        Host entry = hosts.get(host);
+        return entry == null ? -1 : entry.limit.limit();
+    }
+
+    /**
+     * Take a place of {@code host},or wait for one.
+     *
+     * @return null if the waiting queue of the host is full,the request should be shed.
+     */
+    Permit acquire(String host) {
+        while (true) {
+            Host entry = hosts.get(host);
+            if (entry == null) {
+                if (hosts.size() >= MAX_HOSTS) {
+                    removeIdleHosts();
+                }
+                entry = hosts.computeIfAbsent(host, k -> new Host(k, new Limit(initialLimit, 1, maxLimit)));
+            }
+            Permit permit = new Permit(entry);
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue;
+                }
+                if (entry.inFlight < entry.limit.limit()) {
+                    entry.inFlight++;
+                    permit.startNanos = System.nanoTime();
+                    permit.granted.complete(null);
+                    return permit;
+                }
+                if (entry.waiters.size() >= maxQueue) {
+                    return null;
+                }
+                entry.waiters.addLast(permit);
+            }
+            return permit;
+        }
+    }
+
+    /**
+     * Drop the hosts without requests,so a client talking to many hosts doesn't keep them all.
+     */
+    private void removeIdleHosts() {
+        for (Host entry : hosts.values()) {
+            synchronized (entry) {
+                if (entry.inFlight == 0 && entry.waiters.isEmpty()) {
+                    entry.removed = true;
+                    hosts.remove(entry.name, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * The request of {@code permit} got {@code response},adapt the limits and let waiters in.
+     */
+    void release(Permit permit, HttpResponse response) {
+        Host entry = permit.host;
+        long now = System.nanoTime();
+        boolean sample = response.code != HttpConst.REQUEST_CANCELED;
+        boolean dropped = isOverload(response);
+        long rtt;
+        List<Permit> granted = null;
+        synchronized (entry) {
+            if (permit.startNanos == 0) {
+                //never got its place.
+                entry.waiters.remove(permit);
+                return;
+            }
+            rtt = now - permit.startNanos;
+            entry.inFlight--;
+            int limit = sample ? entry.limit.onSample(rtt, entry.inFlight + 1, dropped) : entry.limit.limit();
+            while (entry.inFlight < limit && !entry.waiters.isEmpty()) {
+                Permit next = entry.waiters.pollFirst();
+                entry.inFlight++;
+                next.startNanos = now;
+                if (granted == null) {
+                    granted = new ArrayList<>(2);
+                }
+                granted.add(next);
+            }
+        }
+        if (sample) {
+            RequestPool pool = liteHttp.executePool();
+            pool.setRunningSize(global.onSample(rtt, pool.runningCount(), dropped));
+        }
+        if (granted != null) {
+            for (Permit next : granted) {
+                next.granted.complete(null);
+            }
+        }
+    }
+
+    private static boolean isOverload(HttpResponse response) {
+        return response.code == HttpConst.REQUEST_IO_ERROR || response.code == HttpConst.REQUEST_TIMEOUT
+                || response.code == 503 || response.code == 429;
+    }
+}
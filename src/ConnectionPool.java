@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keep-alive connections of {@link Http1Engine},keyed by {@link Route}.
+ * <p>
+ * At most {@code maxIdleConnections} idle connections are kept,each for {@code keepAliveDuration} at most.
+ * No more than {@code maxConnectionsPerRoute} connections are opened to one route,a request waits for
+ * a free connection up to its connect timeout.
+ */
+public final class ConnectionPool {
+
+    private final int maxIdleConnections;
+    private final long keepAliveNanos;
+    private final int maxConnectionsPerRoute;
+
+    /**
+     * most recently used first.
+     */
+    private final ArrayDeque<PooledConnection> idleConnections = new ArrayDeque<>();
+    /**
+     * open connections of each route,idle or in use.
+     */
+    private final HashMap<Route, Integer> routeConnections = new HashMap<>();
+
+    /**
+     * guards all the state above,a lock rather than a monitor so that waiting virtual threads unmount.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private boolean cleanupRunning;
+    /**
+     * at most one cleanup runs,guarded by cleanupRunning.The exiting thread may still be busy when the next
+     * cleanup is submitted,so the thread count is not bounded here.
+     */
+    private final ThreadPoolExecutor cleanupExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), Util.threadFactory("LiteHttp ConnectionPool", true));
+
+    private final Runnable cleanupRunnable = () -> {
+        while (true) {
+            long waitNanos = cleanup(System.nanoTime());
+            if (waitNanos == -1) {
+                return;
+            }
+            if (waitNanos > 0) {
+                lock.lock();
+                try {
+                    changed.awaitNanos(waitNanos);
+                } catch (InterruptedException ignored) {
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    };
+
+    public ConnectionPool() {
+        this(5, 5, TimeUnit.MINUTES, 16);
+    }
+
+    public ConnectionPool(int maxIdleConnections, long keepAliveDuration, TimeUnit timeUnit,
+                          int maxConnectionsPerRoute) {
+        if (keepAliveDuration <= 0) {
+            throw new IllegalArgumentException("keepAliveDuration <= 0: " + keepAliveDuration);
+        }
+        if (maxConnectionsPerRoute <= 0) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute <= 0: " + maxConnectionsPerRoute);
+        }
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveNanos = timeUnit.toNanos(keepAliveDuration);
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Returns an idle connection of {@code route},or a new one if none is available.
+     *
+     * @param listener gets the connect events of a new connection,{@code call} is passed through.
+     */
+    PooledConnection acquire(Route route, int connectTimeout, int readTimeout, HttpTask call,
+                             EventListener listener) throws IOException {
+        long deadline = connectTimeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout) : 0;
+        while (true) {
+            PooledConnection pooled = null;
+            lock.lock();
+            try {
+                for (Iterator<PooledConnection> iterator = idleConnections.iterator(); iterator.hasNext(); ) {
+                    PooledConnection connection = iterator.next();
+                    if (connection.route.equals(route)) {
+                        iterator.remove();
+                        pooled = connection;
+                        break;
+                    }
+                }
+                if (pooled == null) {
+                    if (connectionCount(route) < maxConnectionsPerRoute) {
+                        routeConnections.put(route, connectionCount(route) + 1);
+                    } else {
+                        long waitNanos = deadline == 0 ? 0 : deadline - System.nanoTime();
+                        if (deadline != 0 && waitNanos <= 0) {
+                            throw new SocketTimeoutException("no free connection to " + route);
+                        }
+                        try {
+                            if (deadline == 0) {
+                                changed.await();
+                            } else {
+                                changed.awaitNanos(waitNanos);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("interrupted waiting a connection to " + route);
+                        }
+                        continue;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (pooled != null) {
+                long idleNanos = System.nanoTime() - pooled.idleAtNanos;
+                if (pooled.isHealthy(idleNanos > TimeUnit.SECONDS.toNanos(10))) {
+                    pooled.setReadTimeout(readTimeout);
+                    return pooled;
+                }
+                discard(pooled);
+                continue;
+            }
+
+            try {
+                return PooledConnection.connect(route, connectTimeout, readTimeout, call, listener);
+            } catch (IOException | RuntimeException e) {
+                lock.lock();
+                try {
+                    decrease(route);
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Give back {@code connection} after an exchange,it is closed if not {@code reusable}.
+     */
+    void release(PooledConnection connection, boolean reusable) {
+        if (!reusable || maxIdleConnections <= 0) {
+            discard(connection);
+            return;
+        }
+        lock.lock();
+        try {
+            connection.reused = true;
+            connection.idleAtNanos = System.nanoTime();
+            idleConnections.addFirst(connection);
+            while (idleConnections.size() > maxIdleConnections) {
+                PooledConnection eldest = idleConnections.removeLast();
+                eldest.close();
+                decrease(eldest.route);
+            }
+            if (!cleanupRunning) {
+                cleanupRunning = true;
+                cleanupExecutor.execute(cleanupRunnable);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close a connection taken from this pool.
+     */
+    void discard(PooledConnection connection) {
+        connection.close();
+        lock.lock();
+        try {
+            decrease(connection.route);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close idle connections which outlived the keep alive duration.
+     *
+     * @return nanos to wait before next cleanup,-1 if nothing is left to clean.
+     */
+    long cleanup(long now) {
+        lock.lock();
+        try {
+            return cleanupLocked(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long cleanupLocked(long now) {
+        long longestIdleNanos = -1;
+        for (Iterator<PooledConnection> iterator = idleConnections.iterator(); iterator.hasNext(); ) {
+            PooledConnection connection = iterator.next();
+            long idleNanos = now - connection.idleAtNanos;
+            if (idleNanos >= keepAliveNanos) {
+                iterator.remove();
+                connection.close();
+                decrease(connection.route);
+            } else if (idleNanos > longestIdleNanos) {
+                longestIdleNanos = idleNanos;
+            }
+        }
+        if (longestIdleNanos == -1) {
+            cleanupRunning = false;
+            return -1;
+        }
+        return keepAliveNanos - longestIdleNanos;
+    }
+
+    public void evictAll() {
+        lock.lock();
+        try {
+            for (PooledConnection connection : idleConnections) {
+                connection.close();
+                decrease(connection.route);
+            }
+            idleConnections.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int idleConnectionCount() {
+        lock.lock();
+        try {
+            return idleConnections.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int connectionCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Integer routeCount : routeConnections.values()) {
+                count += routeCount;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int connectionCount(Route route) {
+        Integer count = routeConnections.get(route);
+        return count == null ? 0 : count;
+    }
+
+    private void decrease(Route route) {
+        int count = connectionCount(route) - 1;
+        if (count <= 0) {
+            routeConnections.remove(route);
+        } else {
+            routeConnections.put(route, count);
+        }
+        changed.signalAll();
+    }
+}
@@ -0,0 +1,27 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A content coding of HTTP(Content-Encoding),registered by {@link LiteHttp#addContentCoding(ContentCoding)}.
+ * gzip and deflate are built in.
+ */
+public interface ContentCoding {
+
+    /**
+     * Token of the coding in Accept-Encoding and Content-Encoding,lower case.
+     */
+    String name();
+
+    /**
+     * Returns {@code in} decoded,closing it closes {@code in}.
+     *
+     * @param bufferSize bytes read from {@code in} at a time.
+     */
+    InputStream decode(InputStream in, int bufferSize) throws IOException;
+
+    /**
+     * Returns a stream writing encoded to {@code out},closing it finishes the encoding and closes {@code out}.
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
@@ -0,0 +1,564 @@
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Content codings of a {@link LiteHttp}:what the engines advertise in Accept-Encoding,how they decode response
+ * bodies,and gzip of large request bodies.
+ * <p>
+ * gzip and deflate use {@link Inflater}s and {@link Deflater}s from a process wide pool,each one holds native
+ * memory which is otherwise freed only when it is garbage collected.A decoded stream gives its inflater back
+ * when it is closed.
+ */
+final class ContentCodings {
+
+    static final int DEFAULT_DECODE_BUFFER_SIZE = 8192;
+    private static final int MAX_POOLED = 32;
+    private static final int MAX_COMPRESSED_BODY = 8 * 1024 * 1024;
+    private static final int MAX_GZIP_HOSTS = 1024;
+
+    private static final Pool<Inflater> RAW_INFLATERS =
+            new Pool<>(() -> new Inflater(true), Inflater::reset, Inflater::end);
+    private static final Pool<Inflater> ZLIB_INFLATERS =
+            new Pool<>(() -> new Inflater(false), Inflater::reset, Inflater::end);
+    private static final Pool<Deflater> RAW_DEFLATERS =
+            new Pool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::reset, Deflater::end);
+    private static final Pool<Deflater> ZLIB_DEFLATERS =
+            new Pool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, false), Deflater::reset, Deflater::end);
+
+    static final ContentCoding GZIP = new DeflateCoding("gzip", true);
+    static final ContentCoding DEFLATE = new DeflateCoding("deflate", false);
+
+    /**
+     * codings of requests without a {@link LiteHttp}.
+     */
+    static final ContentCodings DEFAULT = new ContentCodings();
+
+    private volatile Map<String, ContentCoding> codings;
+    private volatile String acceptEncoding;
+    private volatile int decodeBufferSize = DEFAULT_DECODE_BUFFER_SIZE;
+    private volatile long compressMinBytes = -1;
+    /**
+     * hosts which answered with Accept-Encoding: gzip(RFC 7694),so take gzip request bodies.
+     */
+    private final Set<String> gzipHosts = ConcurrentHashMap.newKeySet();
+
+    ContentCodings() {
+        LinkedHashMap<String, ContentCoding> builtIn = new LinkedHashMap<>();
+        builtIn.put(GZIP.name(), GZIP);
+        builtIn.put(DEFLATE.name(), DEFLATE);
+        setCodings(builtIn);
+    }
+
+    synchronized void add(ContentCoding coding) {
+        LinkedHashMap<String, ContentCoding> copy = new LinkedHashMap<>(codings);
+        copy.put(coding.name().toLowerCase(Locale.US), coding);
+        setCodings(copy);
+    }
+
+    private void setCodings(LinkedHashMap<String, ContentCoding> codings) {
+        this.codings = codings;
+        this.acceptEncoding = String.join(", ", codings.keySet());
+    }
+
+    void setDecodeBufferSize(int decodeBufferSize) {
+        if (decodeBufferSize <= 0) {
+            throw new IllegalArgumentException("decodeBufferSize <= 0: " + decodeBufferSize);
+        }
+        this.decodeBufferSize = decodeBufferSize;
+    }
+
+    void setCompressMinBytes(long compressMinBytes) {
+        this.compressMinBytes = compressMinBytes;
+    }
+
+    /**
+     * Value of Accept-Encoding sent when the request has none.
+     */
+    String acceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * Returns {@code in} decoded by the codings of {@code contentEncoding},applied in reverse order,or null if one
+     * of them is unknown.
+     */
+    InputStream decode(String contentEncoding, InputStream in) throws IOException {
+        if (contentEncoding == null) {
+            return in;
+        }
+        String[] names = contentEncoding.split(",");
+        Map<String, ContentCoding> current = codings;
+        ContentCoding[] chain = new ContentCoding[names.length];
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim().toLowerCase(Locale.US);
+            if (name.isEmpty() || "identity".equals(name)) {
+                continue;
+            }
+            if ((chain[i] = current.get(name)) == null) {
+                return null;
+            }
+        }
+        for (int i = chain.length - 1; i >= 0; i--) {
+            if (chain[i] != null) {
+                in = chain[i].decode(in, decodeBufferSize);
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Remember the codings a host accepts for request bodies.
+     */
+    void noteResponse(HttpResponse response) {
+        if (compressMinBytes < 0 || response.request == null) {
+            return;
+        }
+        String accepted = response.header("Accept-Encoding");
+        String host = response.request.url.host();
+        if (accepted != null && accepted.toLowerCase(Locale.US).contains("gzip")) {
+            if (gzipHosts.size() < MAX_GZIP_HOSTS) {
+                gzipHosts.add(host);
+            }
+        } else if (response.code == 415) {
+            gzipHosts.remove(host);
+        }
+    }
+
+    /**
+     * Returns {@code request} with its body gzipped if it is large enough and the host is known to accept gzip
+     * bodies,otherwise {@code request}.Bodies streamed from a file are sent as they are.
+     */
+    HttpRequest compress(HttpRequest request) {
+        long minBytes = compressMinBytes;
+        RequestBody body = request.body;
+        if (minBytes < 0 || body == null || body instanceof FileRequestBody) {
+            return request;
+        }
+        long length = body.contentLength();
+        if (length < minBytes || length > MAX_COMPRESSED_BODY || request.headers.get("Content-Encoding") != null
+                || !gzipHosts.contains(request.url.host())) {
+            return request;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.max(length / 4, 256));
+        try (OutputStream out = GZIP.encode(compressed)) {
+            body.writeTo(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return request;
+        }
+        if (compressed.size() >= length) {
+            return request;
+        }
+        return new HttpRequest.Builder(request)
+                .headers(request.headers.newBuilder().add("Content-Encoding", "gzip").build())
+                .method(request.method, RequestBody.create(body.contentType(), compressed.toByteArray()))
+                .build();
+    }
+
+    /**
+     * Codings of {@code call},{@link #DEFAULT} without one.
+     */
+    static ContentCodings of(HttpTask call) {
+        return call != null ? call.contentCodings() : DEFAULT;
+    }
+
+    /**
+     * gzip(RFC 1952) or zlib wrapped deflate(RFC 1950) on pooled inflaters and deflaters.
+     */
+    private static final class DeflateCoding implements ContentCoding {
+        private final String name;
+        private final boolean gzip;
+
+        DeflateCoding(String name, boolean gzip) {
+            this.name = name;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public InputStream decode(InputStream in, int bufferSize) {
+            return new InflatingInputStream(in, gzip, bufferSize);
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) throws IOException {
+            return new DeflatingOutputStream(out, gzip);
+        }
+    }
+
+    /**
+     * Bounded pool of native codec objects,objects beyond the bound are ended at once.
+     */
+    private static final class Pool<T> {
+        private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        private final Supplier<T> factory;
+        private final Consumer<T> reset;
+        private final Consumer<T> end;
+
+        Pool(Supplier<T> factory, Consumer<T> reset, Consumer<T> end) {
+            this.factory = factory;
+            this.reset = reset;
+            this.end = end;
+        }
+
+        T obtain() {
+            T pooled = idle.poll();
+            if (pooled == null) {
+                return factory.get();
+            }
+            idleCount.decrementAndGet();
+            return pooled;
+        }
+
+        void recycle(T object) {
+            reset.accept(object);
+            if (idleCount.incrementAndGet() <= MAX_POOLED) {
+                idle.offer(object);
+            } else {
+                idleCount.decrementAndGet();
+                end.accept(object);
+            }
+        }
+    }
+
+    /**
+     * Decodes gzip,with any number of members,or deflate,zlib wrapped or raw as some servers send it.
+     */
+    static final class InflatingInputStream extends InputStream {
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private final InputStream in;
+        private final boolean gzip;
+        private final byte[] buffer;
+        private final byte[] single = new byte[1];
+        private int pos;
+        private int limit;
+        private Inflater inflater;
+        private Pool<Inflater> inflaterPool;
+        private final CRC32 crc;
+        private boolean started;
+        private boolean eof;
+        private boolean closed;
+
+        InflatingInputStream(InputStream in, boolean gzip, int bufferSize) {
+            this.in = in;
+            this.gzip = gzip;
+            this.buffer = new byte[bufferSize];
+            this.crc = gzip ? new CRC32() : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (!started) {
+                started = true;
+                if (gzip ? !readGzipHeader(true) : !startDeflate()) {
+                    eof = true;
+                }
+            }
+            while (!eof) {
+                int read;
+                try {
+                    read = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage() != null ? e.getMessage() : "invalid compressed data");
+                }
+                if (read > 0) {
+                    if (gzip) {
+                        crc.update(b, off, read);
+                    }
+                    return read;
+                }
+                if (inflater.finished()) {
+                    pos = limit - inflater.getRemaining();
+                    if (!gzip) {
+                        eof = true;
+                    } else {
+                        readGzipTrailer();
+                        //concatenated members.
+                        eof = !readGzipHeader(false);
+                    }
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("deflate dictionary is not supported");
+                } else if (inflater.needsInput()) {
+                    if (pos == limit && !fill()) {
+                        throw new EOFException("unexpected end of compressed stream");
+                    }
+                    inflater.setInput(buffer, pos, limit - pos);
+                    pos = limit;
+                }
+            }
+            //the body is done,the inflater is of no use until close.
+            releaseInflater();
+            return -1;
+        }
+
+        @Override
+        public int available() {
+            return closed || eof ? 0 : 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            releaseInflater();
+            in.close();
+        }
+
+        private void obtainInflater(boolean nowrap) {
+            Pool<Inflater> pool = nowrap ? RAW_INFLATERS : ZLIB_INFLATERS;
+            if (inflater != null && inflaterPool == pool) {
+                inflater.reset();
+                return;
+            }
+            releaseInflater();
+            inflaterPool = pool;
+            inflater = pool.obtain();
+        }
+
+        private void releaseInflater() {
+            if (inflater != null) {
+                inflaterPool.recycle(inflater);
+                inflater = null;
+            }
+        }
+
+        private boolean startDeflate() throws IOException {
+            if (pos == limit && !fill()) {
+                return false;
+            }
+            while (limit - pos < 2) {
+                if (!fill()) {
+                    throw new EOFException("unexpected end of compressed stream");
+                }
+            }
+            //zlib header:deflate method and a multiple of 31,otherwise raw deflate.
+            int cmf = buffer[pos] & 0xff;
+            int flg = buffer[pos + 1] & 0xff;
+            obtainInflater((cmf & 0x0f) != 8 || ((cmf << 8) | flg) % 31 != 0);
+            return true;
+        }
+
+        /**
+         * @param first the first member,which must be there.
+         * @return false at the end of the body.
+         */
+        private boolean readGzipHeader(boolean first) throws IOException {
+            int magic = readByte();
+            if (magic == -1) {
+                if (first) {
+                    throw new EOFException("empty gzip body");
+                }
+                return false;
+            }
+            if (magic != 0x1f || readByteOrThrow() != 0x8b) {
+                if (first) {
+                    throw new ZipException("not in gzip format");
+                }
+                //trailing garbage,as GZIPInputStream ignores it.
+                return false;
+            }
+            if (readByteOrThrow() != 8) {
+                throw new ZipException("unsupported gzip compression method");
+            }
+            int flags = readByteOrThrow();
+            //mtime,xfl,os
+            skip(6);
+            if ((flags & FEXTRA) != 0) {
+                skip(readByteOrThrow() | (readByteOrThrow() << 8));
+            }
+            if ((flags & FNAME) != 0) {
+                while (readByteOrThrow() != 0) {
+                    //file name
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (readByteOrThrow() != 0) {
+                    //comment
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                skip(2);
+            }
+            obtainInflater(true);
+            crc.reset();
+            return true;
+        }
+
+        private void readGzipTrailer() throws IOException {
+            long expectedCrc = readIntLittleEndian();
+            long expectedSize = readIntLittleEndian();
+            if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("corrupt gzip trailer");
+            }
+        }
+
+        private long readIntLittleEndian() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 4; i++) {
+                value |= (long) readByteOrThrow() << (8 * i);
+            }
+            return value;
+        }
+
+        private void skip(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                readByteOrThrow();
+            }
+        }
+
+        private int readByteOrThrow() throws IOException {
+            int b = readByte();
+            if (b == -1) {
+                throw new EOFException("unexpected end of gzip stream");
+            }
+            return b;
+        }
+
+        private int readByte() throws IOException {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buffer[pos++] & 0xff;
+        }
+
+        /**
+         * Read more of {@code in} after the unconsumed bytes.
+         *
+         * @return false at the end of {@code in}.
+         */
+        private boolean fill() throws IOException {
+            if (pos > 0) {
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+            return true;
+        }
+    }
+
+    /**
+     * Writes gzip or zlib wrapped deflate with a pooled deflater.
+     */
+    static final class DeflatingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final boolean gzip;
+        private final Pool<Deflater> deflaterPool;
+        private Deflater deflater;
+        private final CRC32 crc;
+        private final byte[] buffer = new byte[8192];
+        private boolean closed;
+
+        DeflatingOutputStream(OutputStream out, boolean gzip) throws IOException {
+            this.out = out;
+            this.gzip = gzip;
+            this.deflaterPool = gzip ? RAW_DEFLATERS : ZLIB_DEFLATERS;
+            this.deflater = deflaterPool.obtain();
+            this.crc = gzip ? new CRC32() : null;
+            if (gzip) {
+                //magic,deflate,no flags,no mtime,no extra flags,unknown os.
+                out.write(new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            if (gzip) {
+                crc.update(b, off, len);
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        private void deflate(int flush) throws IOException {
+            int length = deflater.deflate(buffer, 0, buffer.length, flush);
+            if (length > 0) {
+                out.write(buffer, 0, length);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                if (gzip) {
+                    writeIntLittleEndian(crc.getValue());
+                    writeIntLittleEndian(deflater.getBytesRead());
+                }
+            } finally {
+                deflaterPool.recycle(deflater);
+                deflater = null;
+                out.close();
+            }
+        }
+
+        private void writeIntLittleEndian(long value) throws IOException {
+            for (int i = 0; i < 4; i++) {
+                out.write((int) (value >>> (8 * i)) & 0xff);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves host names,set one with {@link LiteHttp#setDns(Dns)}.Results are cached by {@link LiteHttp}.
+ */
+public interface Dns {
+
+    Dns SYSTEM = host -> {
+        if (host == null) {
+            throw new UnknownHostException("host == null");
+        }
+        return Arrays.asList(InetAddress.getAllByName(host));
+    };
+
+    /**
+     * Returns the addresses of {@code host} in preference order,never empty.
+     */
+    List<InetAddress> lookup(String host) throws UnknownHostException;
+}
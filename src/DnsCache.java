@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host name cache of a {@link LiteHttp} in front of its {@link Dns},and the connects to the addresses found.
+ * <p>
+ * Addresses are kept for the positive ttl,failed lookups for the negative ttl.An entry used in the last
+ * {@link #REFRESH_FRACTION} of its ttl is looked up again in the background,so hot hosts never wait for the
+ * resolver.Concurrent lookups of one host share the call to {@link Dns}.
+ * <p>
+ * Connects race the addresses with {@link AddressRacer},the address which connected moves to the front of its
+ * entry and the ones which failed to the end.
+ */
+final class DnsCache {
+
+    /**
+     * cache of requests without a {@link LiteHttp}.
+     */
+    static final DnsCache DEFAULT = new DnsCache();
+
+    static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+    static final long DEFAULT_NEGATIVE_TTL_MILLIS = 10 * 1000;
+    static final long DEFAULT_ATTEMPT_DELAY_MILLIS = 250;
+    private static final double REFRESH_FRACTION = 0.2;
+    private static final int MAX_ENTRIES = 512;
+
+    private static volatile ThreadPoolExecutor refreshExecutor;
+
+    private volatile Dns dns = Dns.SYSTEM;
+    private volatile long ttlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+    private volatile long negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_NEGATIVE_TTL_MILLIS);
+    private volatile long attemptDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_ATTEMPT_DELAY_MILLIS);
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<List<InetAddress>>> lookups =
+            new ConcurrentHashMap<>();
+
+    void setDns(Dns dns) {
+        this.dns = dns == null ? Dns.SYSTEM : dns;
+        entries.clear();
+    }
+
+    /**
+     * 0 disables caching of that kind.
+     */
+    void setTtl(long ttl, long negativeTtl, TimeUnit unit) {
+        if (ttl < 0 || negativeTtl < 0) {
+            throw new IllegalArgumentException("ttl < 0");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        this.negativeTtlNanos = unit.toNanos(negativeTtl);
+        entries.clear();
+    }
+
+    void setAttemptDelay(long delay, TimeUnit unit) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay < 0: " + delay);
+        }
+        this.attemptDelayNanos = unit.toNanos(delay);
+    }
+
+    /**
+     * Returns the addresses of {@code host},from the cache if fresh.
+     */
+    List<InetAddress> lookup(String host) throws IOException {
+        String key = host.toLowerCase(Locale.US);
+        Entry entry = entries.get(key);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.expiresAtNanos < 0) {
+            if (entry.addresses == null) {
+                throw new UnknownHostException("cached failure," + host);
+            }
+            if (now - entry.refreshAtNanos >= 0 && !lookups.containsKey(key)) {
+                refreshLater(host, key);
+            }
+            return entry.addresses;
+        }
+        return resolve(host, key);
+    }
+
+    /**
+     * Connect to {@code port} of {@code host} at one of {@code addresses},trying the next address after the
+     * attempt delay or a failure.
+     *
+     * @param connectTimeout for all the attempts,in millis,0 for none.
+     */
+    SocketChannel connect(String host, List<InetAddress> addresses, int port, int connectTimeout)
+            throws IOException {
+        List<InetAddress> failed = new ArrayList<>(0);
+        InetAddress connected = null;
+        try {
+            SocketChannel channel = AddressRacer.connect(addresses, port, connectTimeout, attemptDelayNanos, failed);
+            connected = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+            return channel;
+        } finally {
+            if (addresses.size() > 1 && (connected != null && !connected.equals(addresses.get(0))
+                    || !failed.isEmpty())) {
+                reorder(host.toLowerCase(Locale.US), connected, failed);
+            }
+        }
+    }
+
+    private List<InetAddress> resolve(String host, String key) throws IOException {
+        CompletableFuture<List<InetAddress>> mine = new CompletableFuture<>();
+        CompletableFuture<List<InetAddress>> running = lookups.putIfAbsent(key, mine);
+        if (running != null) {
+            return await(host, running);
+        }
+        try {
+            List<InetAddress> addresses = dns.lookup(host);
+            if (addresses == null || addresses.isEmpty()) {
+                throw new UnknownHostException(dns + " returned no addresses for " + host);
+            }
+            addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+            put(key, addresses, ttlNanos);
+            mine.complete(addresses);
+            return addresses;
+        } catch (UnknownHostException e) {
+            put(key, null, negativeTtlNanos);
+            mine.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            lookups.remove(key, mine);
+        }
+    }
+
+    private static List<InetAddress> await(String host, CompletableFuture<List<InetAddress>> lookup)
+            throws IOException {
+        try {
+            return lookup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted resolving " + host);
+        } catch (ExecutionException e) {
+            UnknownHostException failure = new UnknownHostException(host);
+            failure.initCause(e.getCause());
+            throw failure;
+        }
+    }
+
+    /**
+     * Cache of {@code call},{@link #DEFAULT} without one.
+     */
+    static DnsCache of(HttpTask call) {
+        return call != null ? call.dnsCache() : DEFAULT;
+    }
+
+    private void refreshLater(String host, String key) {
+        try {
+            refreshExecutor().execute(() -> {
+                try {
+                    resolve(host, key);
+                } catch (IOException | RuntimeException ignored) {
+                    //the entry stays until it expires.
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            //all refresh threads busy,try on a later hit.
+        }
+    }
+
+    private void put(String key, List<InetAddress> addresses, long ttl) {
+        if (ttl <= 0) {
+            entries.remove(key);
+            return;
+        }
+        long now = System.nanoTime();
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(key)) {
+            evict(now);
+        }
+        entries.put(key, new Entry(addresses, now + ttl, now + (long) (ttl * (1 - REFRESH_FRACTION))));
+    }
+
+    /**
+     * Drop expired entries,or any one if none expired.
+     */
+    private void evict(long now) {
+        boolean removed = false;
+        for (Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().getValue().expiresAtNanos >= 0) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        if (!removed) {
+            Iterator<String> iterator = entries.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Move {@code connected} to the front of the cached addresses of {@code key} and {@code failed} to the end,
+     * so the next connect tries the address which answered first.
+     */
+    private void reorder(String key, InetAddress connected, List<InetAddress> failed) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.addresses == null || entry.addresses.size() < 2) {
+            return;
+        }
+        List<InetAddress> reordered = new ArrayList<>(entry.addresses.size());
+        if (connected != null && entry.addresses.contains(connected)) {
+            reordered.add(connected);
+        }
+        for (InetAddress address : entry.addresses) {
+            if (!address.equals(connected) && !failed.contains(address)) {
+                reordered.add(address);
+            }
+        }
+        for (InetAddress address : entry.addresses) {
+            if (!address.equals(connected) && failed.contains(address)) {
+                reordered.add(address);
+            }
+        }
+        entries.replace(key, entry, new Entry(Collections.unmodifiableList(reordered), entry.expiresAtNanos,
+                entry.refreshAtNanos));
+    }
+
+    private static ThreadPoolExecutor refreshExecutor() {
+        ThreadPoolExecutor result = refreshExecutor;
+        if (result == null) {
+            synchronized (DnsCache.class) {
+                result = refreshExecutor;
+                if (result == null) {
+                    refreshExecutor = result = new ThreadPoolExecutor(0, 4, 30, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), Util.threadFactory("LiteHttp Dns", true));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static final class Entry {
+        /**
+         * null for a failed lookup.
+         */
+        final List<InetAddress> addresses;
+        final long expiresAtNanos;
+        final long refreshAtNanos;
+
+        Entry(List<InetAddress> addresses, long expiresAtNanos, long refreshAtNanos) {
+            this.addresses = addresses;
+            this.expiresAtNanos = expiresAtNanos;
+            this.refreshAtNanos = refreshAtNanos;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Phase timing of requests,register one with {@link LiteHttp#setEventListener(EventListener)}.
+ * <p>
+ * Every method gets the task and {@link System#nanoTime()} of the event,override the ones of interest.
+ * Methods are called on the thread doing the work,keep them fast.
+ */
+public abstract class EventListener {
+
+    public static final EventListener NONE = new EventListener() {
+    };
+
+    /**
+     * Task is waiting for a free slot in the request pool.
+     */
+    public void callQueued(HttpTask call, long nanoTime) {
+    }
+
+    /**
+     * Task starts running on a pool thread.
+     */
+    public void callDispatched(HttpTask call, long nanoTime) {
+    }
+
+    /**
+     * Request enters the filter chain.
+     */
+    public void filterChainStart(HttpTask call, long nanoTime) {
+    }
+
+    /**
+     * Host name lookup of a new connection,answered by the cache or the {@link Dns}.
+     */
+    public void dnsStart(HttpTask call, long nanoTime) {
+    }
+
+    public void dnsEnd(HttpTask call, long nanoTime) {
+    }
+
+    public void connectStart(HttpTask call, long nanoTime) {
+    }
+
+    public void secureConnectStart(HttpTask call, long nanoTime) {
+    }
+
+    public void secureConnectEnd(HttpTask call, long nanoTime) {
+    }
+
+    public void connectEnd(HttpTask call, long nanoTime) {
+    }
+
+    /**
+     * A connection is ready for the request,new or pooled.
+     */
+    public void connectionAcquired(HttpTask call, long nanoTime) {
+    }
+
+    public void requestHeadersEnd(HttpTask call, long nanoTime) {
+    }
+
+    public void requestBodyEnd(HttpTask call, long nanoTime) {
+    }
+
+    /**
+     * First bytes of the response arrived.
+     */
+    public void responseHeadersStart(HttpTask call, long nanoTime) {
+    }
+
+    public void responseBodyEnd(HttpTask call, long nanoTime) {
+    }
+
+    /**
+     * Response was delivered to the callback.
+     */
+    public void callEnd(HttpTask call, long nanoTime) {
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Request body read from a file while it is sent.
+ */
+final class FileRequestBody extends RequestBody {
+
+    private final MediaType contentType;
+    private final File file;
+
+    FileRequestBody(MediaType contentType, File file) {
+        if (file == null) throw new NullPointerException("file == null");
+        this.contentType = contentType;
+        this.file = file;
+    }
+
+    @Override
+    MediaType contentType() {
+        return contentType;
+    }
+
+    /**
+     * Size of the file,0 if it doesn't exist.
+     */
+    @Override
+    long contentLength() {
+        return file.length();
+    }
+
+    /**
+     * Whole file in memory,prefer {@link #writeTo}.
+     */
+    @Override
+    byte[] bytes() {
+        return BytesConvert.convertFile(file);
+    }
+
+    @Override
+    void writeTo(OutputStream out) throws IOException {
+        transferTo(Channels.newChannel(out), contentLength());
+    }
+
+    /**
+     * Copy {@code count} bytes of the file to {@code target},zero copy if {@code target} is a socket or file channel.
+     */
+    void transferTo(WritableByteChannel target, long count) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            FileChannel channel = fis.getChannel();
+            long position = 0;
+            while (position < count) {
+                long transferred = channel.transferTo(position, count - position, target);
+                if (transferred <= 0) {
+                    //file shrunk while sending.
+                    throw new IOException("unexpected end of " + file);
+                }
+                position += transferred;
+            }
+        }
+    }
+}
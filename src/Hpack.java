@@ -0,0 +1,530 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Header compression of http/2,see rfc7541.
+ * <p>
+ * Header lists are flat name,value arrays like {@link RequestHeaders#getNamesAndValues()},names in lower case.
+ */
+final class Hpack {
+
+    private static final int DEFAULT_TABLE_SIZE = 4096;
+
+    private static final String[] STATIC_TABLE = {
+            ":authority", "",
+            ":method", "GET",
+            ":method", "POST",
+            ":path", "/",
+            ":path", "/index.html",
+            ":scheme", "http",
+            ":scheme", "https",
+            ":status", "200",
+            ":status", "204",
+            ":status", "206",
+            ":status", "304",
+            ":status", "400",
+            ":status", "404",
+            ":status", "500",
+            "accept-charset", "",
+            "accept-encoding", "gzip, deflate",
+            "accept-language", "",
+            "accept-ranges", "",
+            "accept", "",
+            "access-control-allow-origin", "",
+            "age", "",
+            "allow", "",
+            "authorization", "",
+            "cache-control", "",
+            "content-disposition", "",
+            "content-encoding", "",
+            "content-language", "",
+            "content-length", "",
+            "content-location", "",
+            "content-range", "",
+            "content-type", "",
+            "cookie", "",
+            "date", "",
+            "etag", "",
+            "expect", "",
+            "expires", "",
+            "from", "",
+            "host", "",
+            "if-match", "",
+            "if-modified-since", "",
+            "if-none-match", "",
+            "if-range", "",
+            "if-unmodified-since", "",
+            "last-modified", "",
+            "link", "",
+            "location", "",
+            "max-forwards", "",
+            "proxy-authenticate", "",
+            "proxy-authorization", "",
+            "range", "",
+            "referer", "",
+            "refresh", "",
+            "retry-after", "",
+            "server", "",
+            "set-cookie", "",
+            "strict-transport-security", "",
+            "transfer-encoding", "",
+            "user-agent", "",
+            "vary", "",
+            "via", "",
+            "www-authenticate", ""
+    };
+    private static final int STATIC_COUNT = STATIC_TABLE.length / 2;
+
+    /**
+     * first static index of each name,1 based.
+     */
+    private static final HashMap<String, Integer> STATIC_NAMES = new HashMap<>();
+
+    static {
+        for (int i = STATIC_COUNT - 1; i >= 0; i--) {
+            STATIC_NAMES.put(STATIC_TABLE[i * 2], i + 1);
+        }
+    }
+
+    private Hpack() {
+    }
+
+    /**
+     * Entries added last come first,indexes after the static table.
+     */
+    private static final class DynamicTable {
+        private final ArrayList<String> entries = new ArrayList<>();
+        private int size;
+        private int maxSize;
+
+        DynamicTable(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        int count() {
+            return entries.size() / 2;
+        }
+
+        String name(int index) {
+            return entries.get(entries.size() - index * 2 - 2);
+        }
+
+        String value(int index) {
+            return entries.get(entries.size() - index * 2 - 1);
+        }
+
+        void add(String name, String value) {
+            int entrySize = entrySize(name, value);
+            if (entrySize > maxSize) {
+                entries.clear();
+                size = 0;
+                return;
+            }
+            entries.add(name);
+            entries.add(value);
+            size += entrySize;
+            evict();
+        }
+
+        void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            evict();
+        }
+
+        private void evict() {
+            int evicted = 0;
+            while (size > maxSize) {
+                size -= entrySize(entries.get(evicted), entries.get(evicted + 1));
+                evicted += 2;
+            }
+            if (evicted > 0) {
+                entries.subList(0, evicted).clear();
+            }
+        }
+
+        private static int entrySize(String name, String value) {
+            return name.length() + value.length() + 32;
+        }
+    }
+
+    static final class Encoder {
+        private final DynamicTable table = new DynamicTable(DEFAULT_TABLE_SIZE);
+        /**
+         * smallest table size set by peer since the last header block,-1 if unchanged.
+         */
+        private int minSizeUpdate = -1;
+        private int sizeUpdate = -1;
+
+        /**
+         * Peer changed SETTINGS_HEADER_TABLE_SIZE,the next block starts with a size update.
+         */
+        void setMaxTableSize(int maxSize) {
+            int size = Math.min(maxSize, DEFAULT_TABLE_SIZE);
+            minSizeUpdate = minSizeUpdate == -1 ? size : Math.min(minSizeUpdate, size);
+            sizeUpdate = size;
+        }
+
+        void encode(String[] namesAndValues, ByteArrayOutputStream out) {
+            if (sizeUpdate != -1) {
+                if (minSizeUpdate < sizeUpdate) {
+                    table.setMaxSize(minSizeUpdate);
+                    writeInt(out, minSizeUpdate, 5, 0x20);
+                }
+                table.setMaxSize(sizeUpdate);
+                writeInt(out, sizeUpdate, 5, 0x20);
+                minSizeUpdate = -1;
+                sizeUpdate = -1;
+            }
+            for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+                String name = namesAndValues[i];
+                String value = namesAndValues[i + 1];
+                int nameIndex = -1;
+                int fullIndex = -1;
+                Integer staticIndex = STATIC_NAMES.get(name);
+                if (staticIndex != null) {
+                    nameIndex = staticIndex;
+                    for (int s = staticIndex; s <= STATIC_COUNT && STATIC_TABLE[s * 2 - 2].equals(name); s++) {
+                        if (STATIC_TABLE[s * 2 - 1].equals(value)) {
+                            fullIndex = s;
+                            break;
+                        }
+                    }
+                }
+                for (int d = 0, count = table.count(); fullIndex == -1 && d < count; d++) {
+                    if (table.name(d).equals(name)) {
+                        if (table.value(d).equals(value)) {
+                            fullIndex = STATIC_COUNT + d + 1;
+                        } else if (nameIndex == -1) {
+                            nameIndex = STATIC_COUNT + d + 1;
+                        }
+                    }
+                }
+                if (fullIndex != -1) {
+                    writeInt(out, fullIndex, 7, 0x80);
+                } else if (isSensitive(name, value)) {
+                    //never indexed,intermediaries must not compress it either.
+                    writeLiteral(out, nameIndex, name, value, 4, 0x10);
+                } else {
+                    writeLiteral(out, nameIndex, name, value, 6, 0x40);
+                    table.add(name, value);
+                }
+            }
+        }
+
+        private static boolean isSensitive(String name, String value) {
+            return "authorization".equals(name) || "proxy-authorization".equals(name)
+                    || "cookie".equals(name) && value.length() < 20;
+        }
+
+        private static void writeLiteral(ByteArrayOutputStream out, int nameIndex, String name, String value,
+                                         int prefixBits, int pattern) {
+            if (nameIndex != -1) {
+                writeInt(out, nameIndex, prefixBits, pattern);
+            } else {
+                out.write(pattern);
+                writeString(out, name);
+            }
+            writeString(out, value);
+        }
+
+        private static void writeString(ByteArrayOutputStream out, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+            int huffmanLength = Huffman.encodedLength(bytes);
+            if (huffmanLength < bytes.length) {
+                writeInt(out, huffmanLength, 7, 0x80);
+                Huffman.encode(bytes, out);
+            } else {
+                writeInt(out, bytes.length, 7, 0);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, int value, int prefixBits, int pattern) {
+            int max = (1 << prefixBits) - 1;
+            if (value < max) {
+                out.write(pattern | value);
+                return;
+            }
+            out.write(pattern | max);
+            value -= max;
+            while (value >= 0x80) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    static final class Decoder {
+        private final DynamicTable table = new DynamicTable(DEFAULT_TABLE_SIZE);
+        private final int maxHeaderListSize;
+
+        private byte[] block;
+        private int pos;
+        private int limit;
+
+        Decoder(int maxHeaderListSize) {
+            this.maxHeaderListSize = maxHeaderListSize;
+        }
+
+        /**
+         * Decode a complete header block.
+         *
+         * @return names and values in order of the block.
+         */
+        List<String> decode(byte[] block, int offset, int length) throws IOException {
+            this.block = block;
+            this.pos = offset;
+            this.limit = offset + length;
+            List<String> result = new ArrayList<>(16);
+            int listSize = 0;
+            try {
+                while (pos < limit) {
+                    int b = block[pos] & 0xff;
+                    String name;
+                    String value;
+                    if ((b & 0x80) != 0) {
+                        int index = readInt(7);
+                        name = name(index);
+                        value = value(index);
+                    } else if ((b & 0xc0) == 0x40) {
+                        int index = readInt(6);
+                        name = index == 0 ? readString() : name(index);
+                        value = readString();
+                        table.add(name, value);
+                    } else if ((b & 0xe0) == 0x20) {
+                        int size = readInt(5);
+                        if (size > DEFAULT_TABLE_SIZE) {
+                            throw new ProtocolException("Invalid dynamic table size update " + size);
+                        }
+                        table.setMaxSize(size);
+                        continue;
+                    } else {
+                        //without indexing or never indexed.
+                        int index = readInt(4);
+                        name = index == 0 ? readString() : name(index);
+                        value = readString();
+                    }
+                    listSize += name.length() + value.length() + 32;
+                    if (listSize > maxHeaderListSize) {
+                        throw new ProtocolException("Header list too large");
+                    }
+                    result.add(name);
+                    result.add(value);
+                }
+            } finally {
+                this.block = null;
+            }
+            return result;
+        }
+
+        private String name(int index) throws IOException {
+            if (index >= 1 && index <= STATIC_COUNT) {
+                return STATIC_TABLE[index * 2 - 2];
+            }
+            int dynamic = index - STATIC_COUNT - 1;
+            if (index <= 0 || dynamic >= table.count()) {
+                throw new ProtocolException("Header index too large " + index);
+            }
+            return table.name(dynamic);
+        }
+
+        private String value(int index) throws IOException {
+            if (index >= 1 && index <= STATIC_COUNT) {
+                return STATIC_TABLE[index * 2 - 1];
+            }
+            int dynamic = index - STATIC_COUNT - 1;
+            if (index <= 0 || dynamic >= table.count()) {
+                throw new ProtocolException("Header index too large " + index);
+            }
+            return table.value(dynamic);
+        }
+
+        private int readInt(int prefixBits) throws IOException {
+            int max = (1 << prefixBits) - 1;
+            int value = readByte() & max;
+            if (value < max) {
+                return value;
+            }
+            for (int shift = 0; shift < 28; shift += 7) {
+                int b = readByte();
+                value += (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new ProtocolException("Header integer overflow");
+        }
+
+        private int readByte() throws IOException {
+            if (pos >= limit) {
+                throw new ProtocolException("Truncated header block");
+            }
+            return block[pos++] & 0xff;
+        }
+
+        private String readString() throws IOException {
+            if (pos >= limit) {
+                throw new ProtocolException("Truncated header block");
+            }
+            boolean huffman = (block[pos] & 0x80) != 0;
+            int length = readInt(7);
+            if (length > limit - pos) {
+                throw new ProtocolException("Truncated header block");
+            }
+            String value = huffman
+                    ? Huffman.decode(block, pos, length)
+                    : new String(block, pos, length, StandardCharsets.ISO_8859_1);
+            pos += length;
+            return value;
+        }
+    }
+
+    /**
+     * Canonical huffman code of rfc7541 appendix B,built from the code lengths.
+     */
+    static final class Huffman {
+        private static final byte[] LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+        };
+        private static final int EOS = 256;
+        private static final int[] CODES = new int[LENGTHS.length];
+        /**
+         * decoding tree,children of node n are at 2n and 2n+1,a leaf holds -(symbol + 1).
+         */
+        private static final int[] TREE;
+
+        static {
+            Integer[] order = new Integer[LENGTHS.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> LENGTHS[a] != LENGTHS[b] ? LENGTHS[a] - LENGTHS[b] : a - b);
+            int code = 0;
+            int length = LENGTHS[order[0]];
+            for (int i = 0; i < order.length; i++) {
+                int symbol = order[i];
+                if (i > 0) {
+                    code = (code + 1) << (LENGTHS[symbol] - length);
+                    length = LENGTHS[symbol];
+                }
+                CODES[symbol] = code;
+            }
+            //257 leaves,256 inner nodes,two slots each.
+            int[] tree = new int[2 * 512];
+            int next = 1;
+            for (int symbol = 0; symbol < LENGTHS.length; symbol++) {
+                int node = 0;
+                for (int bit = LENGTHS[symbol] - 1; bit >= 0; bit--) {
+                    int slot = 2 * node + ((CODES[symbol] >>> bit) & 1);
+                    if (bit == 0) {
+                        tree[slot] = -(symbol + 1);
+                    } else {
+                        if (tree[slot] == 0) {
+                            tree[slot] = next++;
+                        }
+                        node = tree[slot];
+                    }
+                }
+            }
+            TREE = tree;
+        }
+
+        static int encodedLength(byte[] bytes) {
+            long bits = 0;
+            for (byte b : bytes) {
+                bits += LENGTHS[b & 0xff];
+            }
+            return (int) ((bits + 7) >> 3);
+        }
+
+        static void encode(byte[] bytes, ByteArrayOutputStream out) {
+            long current = 0;
+            int bits = 0;
+            for (byte b : bytes) {
+                int symbol = b & 0xff;
+                current = (current << LENGTHS[symbol]) | CODES[symbol];
+                bits += LENGTHS[symbol];
+                while (bits >= 8) {
+                    bits -= 8;
+                    out.write((int) (current >> bits));
+                }
+            }
+            if (bits > 0) {
+                //pad with the most significant bits of EOS,all ones.
+                current = (current << (8 - bits)) | (0xff >>> bits);
+                out.write((int) current);
+            }
+        }
+
+        static String decode(byte[] bytes, int offset, int length) throws IOException {
+            StringBuilder result = new StringBuilder(length * 8 / 5);
+            int node = 0;
+            int pendingBits = 0;
+            boolean allOnes = true;
+            for (int i = offset, end = offset + length; i < end; i++) {
+                int b = bytes[i] & 0xff;
+                for (int bit = 7; bit >= 0; bit--) {
+                    int one = (b >>> bit) & 1;
+                    int child = TREE[2 * node + one];
+                    pendingBits++;
+                    allOnes &= one == 1;
+                    if (child < 0) {
+                        int symbol = -child - 1;
+                        if (symbol == EOS) {
+                            throw new ProtocolException("EOS in huffman string");
+                        }
+                        result.append((char) symbol);
+                        node = 0;
+                        pendingBits = 0;
+                        allOnes = true;
+                    } else if (child == 0) {
+                        throw new ProtocolException("Invalid huffman code");
+                    } else {
+                        node = child;
+                    }
+                }
+            }
+            if (pendingBits > 7 || !allOnes) {
+                throw new ProtocolException("Invalid huffman padding");
+            }
+            return result.toString();
+        }
+    }
+
+    static String lowerCase(String name) {
+        for (int i = 0, length = name.length(); i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return name.toLowerCase(Locale.US);
+            }
+        }
+        return name;
+    }
+}
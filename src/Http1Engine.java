@@ -0,0 +1,641 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Http/1.1 {@link HttpEngine} which keeps connections alive in a {@link ConnectionPool}.
+ * <p>
+ * Redirects are followed,a request failed on a pooled connection closed by peer is retried once on a new one.
+ * Response bodies are buffered unless the request is streaming,see {@link HttpRequest.Builder#streaming}.
+ */
+public final class Http1Engine implements HttpEngine {
+
+    private static final int MAX_FOLLOW_UPS = 20;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final ConnectionPool pool;
+
+    public Http1Engine() {
+        this(new ConnectionPool());
+    }
+
+    public Http1Engine(ConnectionPool pool) {
+        if (pool == null) throw new NullPointerException("pool == null");
+        this.pool = pool;
+    }
+
+    public ConnectionPool connectionPool() {
+        return pool;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+        return execute(null, request);
+    }
+
+    @Override
+    public HttpResponse execute(HttpTask call, HttpRequest request) {
+        EventListener listener = call != null ? call.eventListener() : EventListener.NONE;
+        HttpResponse response = new HttpResponse();
+        response.request = request;
+        String requestUrl = request.url();
+        try {
+            HttpRequest current = request;
+            for (int followUps = 0; ; followUps++) {
+                if (Util.strIsEmpty(current.url.host())) {
+                    throw new IllegalArgumentException("no host");
+                }
+                exchange(current, response, call, listener);
+                HttpRequest followUp = followUp(current, response);
+                if (followUp == null) {
+                    break;
+                }
+                if (followUps >= MAX_FOLLOW_UPS) {
+                    throw new ProtocolException("Too many follow-up requests: " + followUps);
+                }
+                Util.closeQuietly(response.data);
+                response.data = null;
+                current = followUp;
+            }
+        } catch (ProtocolException e) {
+            response.code = HttpConst.REQUEST_PROTOCOL_ERROR;
+            response.message = "request on protocol error," + requestUrl;
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            response.code = HttpConst.REQUEST_URL_ERROR;
+            response.message = "request on invalid url," + requestUrl;
+            e.printStackTrace();
+        } catch (IOException e) {
+            response.code = HttpConst.REQUEST_IO_ERROR;
+            response.message = "request on io error," + requestUrl;
+            e.printStackTrace();
+        } catch (Exception e) {
+            response.code = HttpConst.REQUEST_UNKNOWN_ERROR;
+            response.message = "request on unknown error," + requestUrl;
+            e.printStackTrace();
+        }
+        return response;
+    }
+
+    @Override
+    public void shutdown() {
+        pool.evictAll();
+    }
+
+    private void exchange(HttpRequest request, HttpResponse response, HttpTask call, EventListener listener)
+            throws IOException {
+        Route route = Route.of(request.url);
+        boolean retried = false;
+        while (true) {
+            PooledConnection connection = pool.acquire(route, request.connectTimeout, request.readTimeout,
+                    call, listener);
+            listener.connectionAcquired(call, System.nanoTime());
+            if (call != null) {
+                //closed if the call deadline passes.
+                call.attach(connection.socket);
+            }
+            try {
+                boolean transparentDecoding;
+                try {
+                    transparentDecoding = writeRequest(connection, request, call, listener);
+                    readResponseHeaders(connection, response, call, listener);
+                } catch (IOException e) {
+                    pool.discard(connection);
+                    if (connection.reused && !retried && isRecoverable(e)
+                            && RetryPolicy.isIdempotent(request.method) && (call == null || !call.abandoned())) {
+                        //pooled connection was closed by peer,a body may have reached the server,send it again
+                        //only if that is safe.A socket closed by a timeout or a lost hedge isn't retried.
+                        retried = true;
+                        continue;
+                    }
+                    throw e;
+                }
+                readBody(connection, request, response, transparentDecoding, call, listener);
+                return;
+            } finally {
+                if (call != null) {
+                    call.detach(connection.socket);
+                }
+            }
+        }
+    }
+
+    private static boolean isRecoverable(IOException e) {
+        return !(e instanceof SocketTimeoutException) && !(e instanceof ProtocolException);
+    }
+
+    /**
+     * @return true if Accept-Encoding is sent by the engine,so the response body should be decoded.
+     */
+    private static boolean writeRequest(PooledConnection connection, HttpRequest request, HttpTask call,
+                                        EventListener listener) throws IOException {
+        RequestUrl url = request.url;
+        StringBuilder head = new StringBuilder(128);
+        head.append(request.method.toUpperCase(Locale.US))
+                .append(' ')
+                .append(url.encodedPathAndQuery())
+                .append(" HTTP/1.1\r\n");
+        OutputStream out = connection.out;
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        RequestHeaders headers = request.headers;
+        headers.writeHttp1(out);
+
+        head.setLength(0);
+        boolean hasAcceptEncoding = headers.get("Accept-Encoding") != null;
+        if (headers.get("Host") == null) {
+            int defaultPort = url.defaultPort(url.scheme());
+            appendHeader(head, "Host", url.port() == defaultPort ? url.host() : url.host() + ":" + url.port());
+        }
+        if (!hasAcceptEncoding) {
+            appendHeader(head, "Accept-Encoding", ContentCodings.of(call).acceptEncoding());
+        }
+        RequestBody body = request.body;
+        long contentLength = body != null ? body.contentLength() : 0;
+        if (body != null) {
+            if (headers.get("Content-Type") == null && body.contentType() != null) {
+                appendHeader(head, "Content-Type", body.contentType().toString());
+            }
+            appendHeader(head, "Content-Length", String.valueOf(contentLength));
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        listener.requestHeadersEnd(call, System.nanoTime());
+        if (contentLength > 0) {
+            SocketChannel channel = connection.socket.getChannel();
+            if (body instanceof FileRequestBody && channel != null) {
+                //plain socket,let the kernel copy the file.
+                out.flush();
+                ((FileRequestBody) body).transferTo(channel, contentLength);
+            } else {
+                body.writeTo(out);
+            }
+        }
+        out.flush();
+        if (body != null) {
+            listener.requestBodyEnd(call, System.nanoTime());
+        }
+        return !hasAcceptEncoding;
+    }
+
+    private static void appendHeader(StringBuilder head, String name, String value) {
+        head.append(name).append(": ").append(value).append("\r\n");
+    }
+
+    private static void readResponseHeaders(PooledConnection connection, HttpResponse response, HttpTask call,
+                                            EventListener listener) throws IOException {
+        boolean first = true;
+        while (true) {
+            String statusLine = readLine(connection.in);
+            if (first) {
+                listener.responseHeadersStart(call, System.nanoTime());
+                first = false;
+            }
+            //HTTP/1.1 200 OK
+            if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12 || statusLine.charAt(8) != ' ') {
+                throw new ProtocolException("Unexpected status line: " + statusLine);
+            }
+            int code;
+            try {
+                code = Integer.parseInt(statusLine.substring(9, 12));
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Unexpected status line: " + statusLine);
+            }
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            String line;
+            while ((line = readLine(connection.in)).length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    throw new ProtocolException("Unexpected header: " + line);
+                }
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                List<String> values = null;
+                for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                    if (entry.getKey().equalsIgnoreCase(name)) {
+                        values = entry.getValue();
+                        break;
+                    }
+                }
+                if (values == null) {
+                    values = new ArrayList<>(1);
+                    headers.put(name, values);
+                }
+                values.add(value);
+            }
+            //informational response,the real one follows.
+            if (code >= 100 && code < 200 && code != 101) {
+                continue;
+            }
+            response.code = code;
+            response.message = statusLine.length() > 13 ? statusLine.substring(13) : "";
+            response.heders = headers;
+            //http/1.0 closes connection unless asked to keep it.
+            if (statusLine.charAt(7) == '0' && !"keep-alive".equalsIgnoreCase(response.header("Connection"))) {
+                headers.put("Connection", new ArrayList<>(Collections.singletonList("close")));
+            }
+            return;
+        }
+    }
+
+    private void readBody(PooledConnection connection, HttpRequest request, HttpResponse response,
+                          boolean transparentDecoding, HttpTask call, EventListener listener) throws IOException {
+        boolean reusable = !"close".equalsIgnoreCase(response.header("Connection"));
+        BodyInputStream body;
+        long contentLength = -1;
+        String length = response.header("Content-Length");
+        if (length != null) {
+            try {
+                contentLength = Long.parseLong(length.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        if (!hasBody(request, response)) {
+            body = new FixedLengthInputStream(connection.in, 0);
+        } else if ("chunked".equalsIgnoreCase(response.header("Transfer-Encoding"))) {
+            body = new ChunkedInputStream(connection.in);
+        } else if (contentLength != -1) {
+            body = new FixedLengthInputStream(connection.in, contentLength);
+        } else {
+            body = new UntilCloseInputStream(connection.in);
+            reusable = false;
+        }
+
+        boolean decode = transparentDecoding && response.header("Content-Encoding") != null
+                && hasBody(request, response);
+        ContentCodings codings = ContentCodings.of(call);
+
+        if (request.streaming) {
+            StreamingInputStream live = new StreamingInputStream(connection, body, reusable, call, listener);
+            try {
+                response.data = decode ? decodeBody(codings, response, live) : live;
+            } catch (IOException | RuntimeException e) {
+                live.release(false);
+                throw e;
+            }
+            return;
+        }
+
+        MemoryOutputStream buffer = null;
+        InputStream is = body;
+        try {
+            is = decode ? decodeBody(codings, response, body) : body;
+            buffer = HttpWorker.getStreamBuffer(is != body
+                    ? 32768 : Math.max(contentLength > 0 ? (int) Math.min(contentLength, 1 << 20) : 8192, 1024));
+            int len;
+            byte[] bytes = new byte[4096];
+            while ((len = is.read(bytes)) != -1) {
+                buffer.write(bytes, 0, len);
+            }
+            //drain what the decoder left,such as trailers.
+            while (body.read(bytes) != -1) {
+                //ignore
+            }
+        } catch (IOException | RuntimeException e) {
+            Util.closeQuietly(is);
+            pool.discard(connection);
+            if (buffer != null) {
+                Util.closeQuietly(buffer.toInputStream());
+            }
+            throw e;
+        }
+        //gives the inflater back.
+        Util.closeQuietly(is);
+        pool.release(connection, reusable && body.exhausted());
+        response.data = buffer.toInputStream();
+        listener.responseBodyEnd(call, System.nanoTime());
+    }
+
+    private static boolean hasBody(HttpRequest request, HttpResponse response) {
+        if ("HEAD".equalsIgnoreCase(request.method)) {
+            return false;
+        }
+        int code = response.code;
+        return (code < 100 || code >= 200) && code != 204 && code != 304;
+    }
+
+    /**
+     * Returns {@code body} decoded as its Content-Encoding says,or {@code body} itself if a coding is unknown.
+     */
+    static InputStream decodeBody(ContentCodings codings, HttpResponse response, InputStream body)
+            throws IOException {
+        InputStream decoded = codings.decode(response.header("Content-Encoding"), body);
+        if (decoded == null || decoded == body) {
+            return body;
+        }
+        removeHeader(response.heders, "Content-Encoding");
+        removeHeader(response.heders, "Content-Length");
+        return decoded;
+    }
+
+    static void removeHeader(Map<String, List<String>> headers, String name) {
+        headers.keySet().removeIf(name::equalsIgnoreCase);
+    }
+
+    static HttpRequest followUp(HttpRequest request, HttpResponse response) {
+        String method = request.method.toUpperCase(Locale.US);
+        boolean toGet;
+        switch (response.code) {
+            case 301:
+            case 302:
+            case 303:
+                toGet = !"GET".equals(method) && !"HEAD".equals(method);
+                break;
+            case 307:
+            case 308:
+                toGet = false;
+                break;
+            default:
+                return null;
+        }
+        String location = response.header("Location");
+        if (Util.strIsEmpty(location)) {
+            return null;
+        }
+        try {
+            String target = URI.create(request.url()).resolve(location).toString();
+            HttpRequest.Builder builder = new HttpRequest.Builder(request).url(target);
+            if (toGet) {
+                builder.get();
+            }
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new ProtocolException("line too long");
+            }
+            line.append((char) c);
+        }
+        throw new EOFException("unexpected end of stream");
+    }
+
+    /**
+     * Live response body of a streaming request,the connection goes back to the pool once the body is read to
+     * the end or the stream is closed.
+     */
+    private final class StreamingInputStream extends InputStream {
+        private static final int DISCARD_TIMEOUT_MILLIS = 100;
+        private static final int DISCARD_MAX_BYTES = 64 * 1024;
+
+        private final PooledConnection connection;
+        private final BodyInputStream body;
+        private final boolean reusable;
+        private final HttpTask call;
+        private final EventListener listener;
+        private boolean released;
+
+        StreamingInputStream(PooledConnection connection, BodyInputStream body, boolean reusable, HttpTask call,
+                             EventListener listener) {
+            this.connection = connection;
+            this.body = body;
+            this.reusable = reusable;
+            this.call = call;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                return -1;
+            }
+            try {
+                int read = body.read(b, off, len);
+                if (read == -1) {
+                    release(reusable);
+                    listener.responseBodyEnd(call, System.nanoTime());
+                }
+                return read;
+            } catch (IOException | RuntimeException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return released ? 0 : body.available();
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            release(reusable && discardRemaining());
+        }
+
+        /**
+         * Read the unconsumed rest of a small body so the connection can be reused.
+         */
+        private boolean discardRemaining() {
+            if (body.exhausted()) {
+                return true;
+            }
+            try {
+                connection.setReadTimeout(DISCARD_TIMEOUT_MILLIS);
+                byte[] bytes = new byte[4096];
+                int discarded = 0;
+                int read;
+                while (discarded < DISCARD_MAX_BYTES && (read = body.read(bytes, 0, bytes.length)) != -1) {
+                    discarded += read;
+                }
+                return body.exhausted();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void release(boolean reuse) {
+            if (released) {
+                return;
+            }
+            released = true;
+            body.close();
+            pool.release(connection, reuse && body.exhausted());
+        }
+    }
+
+    /**
+     * Response body on a connection,it never reads beyond the end of current response.
+     */
+    abstract static class BodyInputStream extends InputStream {
+        final InputStream in;
+        boolean closed;
+
+        BodyInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * true if the whole body has been read.
+         */
+        abstract boolean exhausted();
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    static final class FixedLengthInputStream extends BodyInputStream {
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        boolean exhausted() {
+            return remaining == 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("closed");
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("unexpected end of stream");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    static final class ChunkedInputStream extends BodyInputStream {
+        private long chunkRemaining = -1;
+        private boolean lastChunk;
+
+        ChunkedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        boolean exhausted() {
+            return lastChunk;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("closed");
+            if (lastChunk) {
+                return -1;
+            }
+            if (chunkRemaining <= 0) {
+                readChunkSize();
+                if (lastChunk) {
+                    return -1;
+                }
+            }
+            int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (read == -1) {
+                throw new EOFException("unexpected end of stream");
+            }
+            chunkRemaining -= read;
+            return read;
+        }
+
+        private void readChunkSize() throws IOException {
+            //CRLF after previous chunk.
+            if (chunkRemaining == 0) {
+                readLine(in);
+            }
+            String line = readLine(in);
+            int extension = line.indexOf(';');
+            if (extension != -1) {
+                line = line.substring(0, extension);
+            }
+            try {
+                chunkRemaining = Long.parseLong(line.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Expected chunk size but was " + line);
+            }
+            if (chunkRemaining < 0) {
+                throw new ProtocolException("Expected chunk size but was " + line);
+            }
+            if (chunkRemaining == 0) {
+                //trailers,end with an empty line.
+                while (readLine(in).length() > 0) {
+                    //ignore
+                }
+                lastChunk = true;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return lastChunk || chunkRemaining <= 0 ? 0 : (int) Math.min(in.available(), chunkRemaining);
+        }
+    }
+
+    static final class UntilCloseInputStream extends BodyInputStream {
+        private boolean end;
+
+        UntilCloseInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        boolean exhausted() {
+            return end;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("closed");
+            if (end) {
+                return -1;
+            }
+            int read = in.read(b, off, len);
+            if (read == -1) {
+                end = true;
+            }
+            return read;
+        }
+    }
+}
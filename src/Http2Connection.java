@@ -0,0 +1,1121 @@
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A http/2 connection to one {@link Route},carrying many concurrent {@link Stream}s,see rfc7540.
+ * <p>
+ * Frames are read by a daemon thread of the connection.Each stream may buffer up to {@link #STREAM_WINDOW} bytes
+ * of response body,the window is given back to the peer as the body is read.
+ */
+final class Http2Connection {
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    static final int TYPE_DATA = 0x0;
+    static final int TYPE_HEADERS = 0x1;
+    static final int TYPE_PRIORITY = 0x2;
+    static final int TYPE_RST_STREAM = 0x3;
+    static final int TYPE_SETTINGS = 0x4;
+    static final int TYPE_PUSH_PROMISE = 0x5;
+    static final int TYPE_PING = 0x6;
+    static final int TYPE_GOAWAY = 0x7;
+    static final int TYPE_WINDOW_UPDATE = 0x8;
+    static final int TYPE_CONTINUATION = 0x9;
+
+    static final int FLAG_END_STREAM = 0x1;
+    static final int FLAG_ACK = 0x1;
+    static final int FLAG_END_HEADERS = 0x4;
+    static final int FLAG_PADDED = 0x8;
+    static final int FLAG_PRIORITY = 0x20;
+
+    static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    static final int SETTINGS_ENABLE_PUSH = 0x2;
+    static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int REFUSED_STREAM = 0x7;
+    static final int CANCEL = 0x8;
+
+    private static final int DEFAULT_WINDOW = 65535;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    static final int STREAM_WINDOW = 1024 * 1024;
+    private static final long MAX_WINDOW = 0x7fffffffL;
+    private static final int CONNECTION_WINDOW = 16 * 1024 * 1024;
+    private static final int MAX_HEADER_LIST_SIZE = 256 * 1024;
+
+    final Route route;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final BufferedOutputStream out;
+
+    /**
+     * guards streams,windows and settings of the peer,a lock rather than a monitor so that waiting virtual
+     * threads unmount.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * signalled when send windows grow,stream slots free up or the connection fails.
+     */
+    private final Condition changed = lock.newCondition();
+    /**
+     * guards the output,the hpack encoder and stream id order.Never taken while holding {@link #lock}.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private final Hpack.Decoder decoder = new Hpack.Decoder(MAX_HEADER_LIST_SIZE);
+
+    private final HashMap<Integer, Stream> streams = new HashMap<>();
+    private int nextStreamId = 1;
+    /**
+     * streams reserved by {@link #reserveStream} but not opened yet.
+     */
+    private int reservedStreams;
+    private int peerMaxConcurrentStreams = 100;
+    private int peerInitialWindow = DEFAULT_WINDOW;
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private long sendWindow = DEFAULT_WINDOW;
+    private int unackedBytes;
+    private boolean shutdown;
+    /**
+     * nano time since the last stream ended.
+     */
+    private long idleAtNanos = System.nanoTime();
+
+    private Http2Connection(Route route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16384));
+        this.out = new BufferedOutputStream(socket.getOutputStream(), DEFAULT_MAX_FRAME_SIZE + 9);
+    }
+
+    /**
+     * Connect to {@code route},negotiating h2 by ALPN for https and with prior knowledge for http.
+     *
+     * @throws UnsupportedProtocolException if the server of a https route doesn't speak h2.
+     */
+    static Http2Connection connect(Route route, int connectTimeout, int readTimeout, HttpTask call,
+                                   EventListener listener) throws IOException {
+        DnsCache dns = DnsCache.of(call);
+        listener.dnsStart(call, System.nanoTime());
+        List<InetAddress> addresses = dns.lookup(route.host);
+        listener.dnsEnd(call, System.nanoTime());
+        listener.connectStart(call, System.nanoTime());
+        Socket socket = dns.connect(route.host, addresses, route.port, connectTimeout).socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(readTimeout);
+            if (route.isHttps()) {
+                listener.secureConnectStart(call, System.nanoTime());
+                TlsConfig tls = TlsConfig.of(call);
+                SSLSocket sslSocket = tls.createSocket(socket, route.host, route.port);
+                socket = sslSocket;
+                if (!Alpn.offer(sslSocket, "h2", "http/1.1")) {
+                    throw new UnsupportedProtocolException("ALPN unavailable");
+                }
+                tls.handshake(sslSocket, route.host);
+                String protocol = Alpn.selected(sslSocket);
+                if (!"h2".equals(protocol)) {
+                    throw new UnsupportedProtocolException("Server selected " + protocol);
+                }
+                listener.secureConnectEnd(call, System.nanoTime());
+            }
+            //the reader thread blocks on the socket,stream deadlines are kept by the callers.
+            socket.setSoTimeout(0);
+            Http2Connection connection = new Http2Connection(route, socket);
+            connection.start();
+            listener.connectEnd(call, System.nanoTime());
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            Util.closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private void start() throws IOException {
+        writeLock.lock();
+        try {
+            out.write(PREFACE);
+            byte[] settings = new byte[18];
+            putSetting(settings, 0, SETTINGS_ENABLE_PUSH, 0);
+            putSetting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE, STREAM_WINDOW);
+            putSetting(settings, 12, SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE);
+            writeFrame(TYPE_SETTINGS, 0, 0, settings, 0, settings.length);
+            writeWindowUpdate(0, CONNECTION_WINDOW - DEFAULT_WINDOW);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+        Thread reader = Util.threadFactory("LiteHttp Http2Connection " + route.host, true).newThread(this::readLoop);
+        reader.start();
+    }
+
+    private static void putSetting(byte[] settings, int offset, int id, int value) {
+        settings[offset] = (byte) (id >>> 8);
+        settings[offset + 1] = (byte) id;
+        putInt(settings, offset + 2, value);
+    }
+
+    /**
+     * Take a stream slot,waiting up to {@code timeoutNanos} for one if {@code timeoutNanos} isn't 0.
+     *
+     * @return false if no slot is free,or the connection can't take new streams.
+     */
+    boolean reserveStream(long timeoutNanos) throws IOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        lock.lock();
+        try {
+            while (true) {
+                if (shutdown) {
+                    return false;
+                }
+                if (streams.size() + reservedStreams < peerMaxConcurrentStreams) {
+                    reservedStreams++;
+                    return true;
+                }
+                long waitNanos = deadline - System.nanoTime();
+                if (timeoutNanos == 0 || waitNanos <= 0) {
+                    return false;
+                }
+                try {
+                    changed.awaitNanos(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted waiting a stream of " + route);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Open a reserved stream by sending its headers.
+     */
+    Stream newStream(String[] headers, boolean endStream) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+        Stream stream;
+        writeLock.lock();
+        try {
+            lock.lock();
+            try {
+                reservedStreams--;
+                if (shutdown) {
+                    changed.signalAll();
+                    throw new RefusedStreamException("connection shutdown");
+                }
+                stream = new Stream(nextStreamId, peerInitialWindow);
+                nextStreamId += 2;
+                streams.put(stream.id, stream);
+                if (endStream) {
+                    stream.outFinished = true;
+                }
+                if (nextStreamId < 0) {
+                    //stream ids are used up,no more new streams here.
+                    shutdown = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            encoder.encode(headers, block);
+            byte[] bytes = block.toByteArray();
+            int length = bytes.length;
+            int offset = 0;
+            int type = TYPE_HEADERS;
+            do {
+                int chunk = Math.min(length - offset, peerMaxFrameSize);
+                int flags = offset + chunk == length ? FLAG_END_HEADERS : 0;
+                if (type == TYPE_HEADERS && endStream) {
+                    flags |= FLAG_END_STREAM;
+                }
+                writeFrame(type, flags, stream.id, bytes, offset, chunk);
+                offset += chunk;
+                type = TYPE_CONTINUATION;
+            } while (offset < length);
+            if (endStream) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+        return stream;
+    }
+
+    /**
+     * Send request body of {@code stream},waiting for flow control windows.
+     */
+    void writeData(Stream stream, byte[] bytes, int offset, int length, boolean endStream) throws IOException {
+        do {
+            int chunk;
+            lock.lock();
+            try {
+                while (true) {
+                    if (stream.error != null) {
+                        throw stream.error;
+                    }
+                    if (stream.inFinished) {
+                        //response is complete,the server won't read the rest.
+                        return;
+                    }
+                    long window = Math.min(sendWindow, stream.sendWindow);
+                    if (window > 0 || length == 0) {
+                        chunk = (int) Math.min(Math.min(length, window), peerMaxFrameSize);
+                        sendWindow -= chunk;
+                        stream.sendWindow -= chunk;
+                        break;
+                    }
+                    try {
+                        changed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("interrupted waiting flow control window");
+                    }
+                }
+                if (endStream && chunk == length) {
+                    stream.outFinished = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            writeLock.lock();
+            try {
+                writeFrame(TYPE_DATA, endStream && chunk == length ? FLAG_END_STREAM : 0, stream.id, bytes, offset,
+                        chunk);
+                if (endStream && chunk == length) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            } finally {
+                writeLock.unlock();
+            }
+            offset += chunk;
+            length -= chunk;
+        } while (length > 0);
+    }
+
+    void flush() throws IOException {
+        writeLock.lock();
+        try {
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Abandon {@code stream},the peer is told to stop sending it.
+     */
+    void cancel(Stream stream) {
+        lock.lock();
+        try {
+            if (stream.inFinished && stream.outFinished || stream.error != null) {
+                return;
+            }
+            stream.error = new IOException("stream canceled");
+            removeStream(stream);
+        } finally {
+            lock.unlock();
+        }
+        writeLock.lock();
+        try {
+            byte[] payload = new byte[4];
+            putInt(payload, 0, CANCEL);
+            writeFrame(TYPE_RST_STREAM, 0, stream.id, payload, 0, 4);
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if no stream can be opened here any more.
+     */
+    boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Open and reserved streams.
+     */
+    int load() {
+        lock.lock();
+        try {
+            return streams.size() + reservedStreams;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Nanos since the last stream ended,0 if a stream is open.
+     */
+    long idleNanos(long now) {
+        lock.lock();
+        try {
+            return streams.isEmpty() && reservedStreams == 0 ? now - idleAtNanos : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close gracefully,open streams fail.
+     */
+    void close() {
+        int lastStreamId;
+        lock.lock();
+        try {
+            lastStreamId = nextStreamId > 2 ? nextStreamId - 2 : 0;
+        } finally {
+            lock.unlock();
+        }
+        writeGoAway(lastStreamId, NO_ERROR);
+        fail(new IOException("connection closed"));
+    }
+
+    /**
+     * Tell the server the connection ends,best effort.
+     */
+    private void writeGoAway(int lastStreamId, int errorCode) {
+        writeLock.lock();
+        try {
+            byte[] payload = new byte[8];
+            putInt(payload, 0, lastStreamId);
+            putInt(payload, 4, errorCode);
+            writeFrame(TYPE_GOAWAY, 0, 0, payload, 0, payload.length);
+            out.flush();
+        } catch (IOException ignored) {
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Stream stream : streams.values()) {
+                if (stream.error == null) {
+                    stream.error = e;
+                }
+                stream.changed.signalAll();
+            }
+            streams.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        Util.closeQuietly(socket);
+    }
+
+    private void removeStream(Stream stream) {
+        if (streams.remove(stream.id) != null) {
+            if (streams.isEmpty()) {
+                idleAtNanos = System.nanoTime();
+            }
+            changed.signalAll();
+        }
+        stream.changed.signalAll();
+    }
+
+    private void readLoop() {
+        try {
+            byte[] preface = new byte[9];
+            in.readFully(preface);
+            //the server preface is a settings frame.
+            if (preface[3] != TYPE_SETTINGS || (preface[4] & FLAG_ACK) != 0) {
+                throw new ProtocolException("Expected a SETTINGS frame but was " + preface[3]);
+            }
+            readFrame(preface);
+            byte[] header = new byte[9];
+            while (true) {
+                in.readFully(header);
+                readFrame(header);
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException(e));
+        }
+    }
+
+    private void readFrame(byte[] header) throws IOException {
+        int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | header[2] & 0xff;
+        int type = header[3] & 0xff;
+        int flags = header[4] & 0xff;
+        int streamId = getInt(header, 5) & 0x7fffffff;
+        if (length > DEFAULT_MAX_FRAME_SIZE) {
+            throw new ProtocolException("FRAME_SIZE_ERROR: " + length);
+        }
+        switch (type) {
+            case TYPE_DATA:
+                readData(length, flags, streamId);
+                break;
+            case TYPE_HEADERS:
+                readHeaders(length, flags, streamId);
+                break;
+            case TYPE_RST_STREAM:
+                readRstStream(length, streamId);
+                break;
+            case TYPE_SETTINGS:
+                readSettings(length, flags);
+                break;
+            case TYPE_PUSH_PROMISE:
+                throw new ProtocolException("PROTOCOL_ERROR: push is disabled");
+            case TYPE_PING:
+                readPing(length, flags);
+                break;
+            case TYPE_GOAWAY:
+                readGoAway(length);
+                break;
+            case TYPE_WINDOW_UPDATE:
+                readWindowUpdate(length, streamId);
+                break;
+            default:
+                //priority and unknown frames.
+                in.skipBytes(length);
+                break;
+        }
+    }
+
+    private void readData(int length, int flags, int streamId) throws IOException {
+        int padding = (flags & FLAG_PADDED) != 0 ? in.readUnsignedByte() : 0;
+        int dataLength = length - padding - ((flags & FLAG_PADDED) != 0 ? 1 : 0);
+        if (dataLength < 0) {
+            throw new ProtocolException("PROTOCOL_ERROR: padding too long");
+        }
+        byte[] data = new byte[dataLength];
+        in.readFully(data);
+        in.skipBytes(padding);
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        boolean reset = false;
+        lock.lock();
+        try {
+            Stream stream = streams.get(streamId);
+            if (stream != null) {
+                if (stream.unreadBytes + dataLength > STREAM_WINDOW) {
+                    stream.error = new ProtocolException("FLOW_CONTROL_ERROR on stream " + streamId);
+                    removeStream(stream);
+                    reset = true;
+                } else {
+                    if (dataLength > 0) {
+                        stream.data.addLast(data);
+                        stream.unreadBytes += dataLength;
+                    }
+                    //padding isn't read by anyone,give it back at once.
+                    stream.unackedBytes += length - dataLength;
+                    if (endStream) {
+                        stream.inFinished = true;
+                        removeStream(stream);
+                    }
+                    stream.changed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (reset) {
+            writeRstStream(streamId, FLOW_CONTROL_ERROR);
+        }
+        //streams are bounded by their own windows,the connection window is given back at once.
+        unackedBytes += length;
+        if (unackedBytes >= CONNECTION_WINDOW / 2) {
+            int increment = unackedBytes;
+            unackedBytes = 0;
+            writeLock.lock();
+            try {
+                writeWindowUpdate(0, increment);
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void readHeaders(int length, int flags, int streamId) throws IOException {
+        int padding = (flags & FLAG_PADDED) != 0 ? in.readUnsignedByte() : 0;
+        int remaining = length - ((flags & FLAG_PADDED) != 0 ? 1 : 0);
+        if ((flags & FLAG_PRIORITY) != 0) {
+            in.skipBytes(5);
+            remaining -= 5;
+        }
+        remaining -= padding;
+        if (remaining < 0) {
+            throw new ProtocolException("PROTOCOL_ERROR: padding too long");
+        }
+        ByteArrayOutputStream block = new ByteArrayOutputStream(Math.max(remaining, 16));
+        copy(block, remaining);
+        in.skipBytes(padding);
+        int headerFlags = flags;
+        while ((headerFlags & FLAG_END_HEADERS) == 0) {
+            byte[] header = new byte[9];
+            in.readFully(header);
+            if (header[3] != TYPE_CONTINUATION || (getInt(header, 5) & 0x7fffffff) != streamId) {
+                throw new ProtocolException("PROTOCOL_ERROR: expected CONTINUATION of " + streamId);
+            }
+            int continuationLength = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | header[2] & 0xff;
+            if (block.size() + continuationLength > MAX_HEADER_LIST_SIZE) {
+                throw new ProtocolException("Header block too large");
+            }
+            copy(block, continuationLength);
+            headerFlags = header[4] & 0xff;
+        }
+        byte[] bytes = block.toByteArray();
+        //always decoded,the hpack state is shared by all streams.
+        List<String> headers = decoder.decode(bytes, 0, bytes.length);
+
+        lock.lock();
+        try {
+            Stream stream = streams.get(streamId);
+            if (stream == null) {
+                return;
+            }
+            if (stream.headers == null) {
+                int status = -1;
+                Map<String, List<String>> map = new LinkedHashMap<>();
+                for (int i = 0; i + 1 < headers.size(); i += 2) {
+                    String name = headers.get(i);
+                    String value = headers.get(i + 1);
+                    if (":status".equals(name)) {
+                        try {
+                            status = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            throw new ProtocolException("Unexpected :status " + value);
+                        }
+                    } else if (!name.startsWith(":")) {
+                        map.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+                    }
+                }
+                if (status == -1) {
+                    throw new ProtocolException("PROTOCOL_ERROR: no :status");
+                }
+                //informational response,the real one follows.
+                if (status >= 100 && status < 200) {
+                    return;
+                }
+                stream.status = status;
+                stream.headers = map;
+            }
+            //trailers are dropped.
+            if ((flags & FLAG_END_STREAM) != 0) {
+                stream.inFinished = true;
+                removeStream(stream);
+            }
+            stream.changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void copy(ByteArrayOutputStream block, int length) throws IOException {
+        byte[] buffer = new byte[Math.min(length, 8192)];
+        while (length > 0) {
+            int read = Math.min(length, buffer.length);
+            in.readFully(buffer, 0, read);
+            block.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    private void readRstStream(int length, int streamId) throws IOException {
+        if (length != 4 || streamId == 0) {
+            throw new ProtocolException("PROTOCOL_ERROR: RST_STREAM");
+        }
+        int errorCode = in.readInt();
+        lock.lock();
+        try {
+            Stream stream = streams.get(streamId);
+            if (stream != null) {
+                stream.error = errorCode == REFUSED_STREAM
+                        ? new RefusedStreamException("stream refused")
+                        : new IOException("stream was reset: " + errorCode);
+                removeStream(stream);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void readSettings(int length, int flags) throws IOException {
+        if ((flags & FLAG_ACK) != 0) {
+            in.skipBytes(length);
+            return;
+        }
+        if (length % 6 != 0) {
+            throw new ProtocolException("FRAME_SIZE_ERROR: SETTINGS " + length);
+        }
+        int headerTableSize = -1;
+        lock.lock();
+        try {
+            for (int i = 0; i < length; i += 6) {
+                int id = in.readUnsignedShort();
+                int value = in.readInt();
+                switch (id) {
+                    case SETTINGS_HEADER_TABLE_SIZE:
+                        headerTableSize = value;
+                        break;
+                    case SETTINGS_MAX_CONCURRENT_STREAMS:
+                        peerMaxConcurrentStreams = value;
+                        break;
+                    case SETTINGS_INITIAL_WINDOW_SIZE:
+                        if (value < 0) {
+                            throw new ProtocolException("FLOW_CONTROL_ERROR: SETTINGS_INITIAL_WINDOW_SIZE " + value);
+                        }
+                        int delta = value - peerInitialWindow;
+                        peerInitialWindow = value;
+                        for (Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                        }
+                        break;
+                    case SETTINGS_MAX_FRAME_SIZE:
+                        if (value < DEFAULT_MAX_FRAME_SIZE || value > 16777215) {
+                            throw new ProtocolException("PROTOCOL_ERROR: SETTINGS_MAX_FRAME_SIZE " + value);
+                        }
+                        peerMaxFrameSize = value;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        writeLock.lock();
+        try {
+            if (headerTableSize != -1) {
+                encoder.setMaxTableSize(headerTableSize);
+            }
+            writeFrame(TYPE_SETTINGS, FLAG_ACK, 0, Util.EMPTY_BYTE_ARRAY, 0, 0);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void readPing(int length, int flags) throws IOException {
+        if (length != 8) {
+            throw new ProtocolException("FRAME_SIZE_ERROR: PING " + length);
+        }
+        byte[] payload = new byte[8];
+        in.readFully(payload);
+        if ((flags & FLAG_ACK) != 0) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            writeFrame(TYPE_PING, FLAG_ACK, 0, payload, 0, 8);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void readGoAway(int length) throws IOException {
+        if (length < 8) {
+            throw new ProtocolException("FRAME_SIZE_ERROR: GOAWAY " + length);
+        }
+        int lastStreamId = in.readInt() & 0x7fffffff;
+        int errorCode = in.readInt();
+        in.skipBytes(length - 8);
+        lock.lock();
+        try {
+            shutdown = true;
+            //streams the server never processed are safe to retry elsewhere.
+            for (Stream stream : new ArrayList<>(streams.values())) {
+                if (stream.id > lastStreamId) {
+                    stream.error = new RefusedStreamException("GOAWAY " + errorCode);
+                    removeStream(stream);
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void readWindowUpdate(int length, int streamId) throws IOException {
+        if (length != 4) {
+            throw new ProtocolException("FRAME_SIZE_ERROR: WINDOW_UPDATE " + length);
+        }
+        long increment = in.readInt() & 0x7fffffffL;
+        int errorCode = increment == 0 ? PROTOCOL_ERROR : FLOW_CONTROL_ERROR;
+        boolean connectionError = false;
+        boolean reset = false;
+        lock.lock();
+        try {
+            if (streamId == 0) {
+                if (increment == 0 || sendWindow + increment > MAX_WINDOW) {
+                    connectionError = true;
+                } else {
+                    sendWindow += increment;
+                }
+            } else {
+                Stream stream = streams.get(streamId);
+                if (stream != null) {
+                    if (increment == 0 || stream.sendWindow + increment > MAX_WINDOW) {
+                        stream.error = new ProtocolException(errorName(errorCode) + ": WINDOW_UPDATE " + increment
+                                + " on stream " + streamId);
+                        removeStream(stream);
+                        reset = true;
+                    } else {
+                        stream.sendWindow += increment;
+                    }
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (connectionError) {
+            //no stream of the server was processed,push is disabled.
+            writeGoAway(0, errorCode);
+            throw new ProtocolException(errorName(errorCode) + ": WINDOW_UPDATE " + increment);
+        }
+        if (reset) {
+            writeRstStream(streamId, errorCode);
+        }
+    }
+
+    private static String errorName(int errorCode) {
+        return errorCode == PROTOCOL_ERROR ? "PROTOCOL_ERROR" : "FLOW_CONTROL_ERROR";
+    }
+
+    private void writeRstStream(int streamId, int errorCode) throws IOException {
+        writeLock.lock();
+        try {
+            byte[] payload = new byte[4];
+            putInt(payload, 0, errorCode);
+            writeFrame(TYPE_RST_STREAM, 0, streamId, payload, 0, 4);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Must hold {@link #writeLock}.
+     */
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] payload = new byte[4];
+        putInt(payload, 0, increment);
+        writeFrame(TYPE_WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+    }
+
+    /**
+     * Must hold {@link #writeLock}.
+     */
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length)
+            throws IOException {
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(type);
+        out.write(flags);
+        out.write(streamId >>> 24 & 0x7f);
+        out.write(streamId >>> 16);
+        out.write(streamId >>> 8);
+        out.write(streamId);
+        out.write(payload, offset, length);
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | bytes[offset + 3] & 0xff;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * One request and response exchange,all state is guarded by the connection lock.
+     */
+    final class Stream {
+        final int id;
+        private final Condition changed = lock.newCondition();
+        private long sendWindow;
+        private int status;
+        private Map<String, List<String>> headers;
+        private final ArrayDeque<byte[]> data = new ArrayDeque<>();
+        private int dataOffset;
+        private int unreadBytes;
+        /**
+         * bytes read but not given back to the peer yet.
+         */
+        private int unackedBytes;
+        private boolean inFinished;
+        private boolean outFinished;
+        private IOException error;
+        /**
+         * Accept-Encoding was sent by the engine,not by the caller.Used by the requesting thread only.
+         */
+        boolean transparentDecoding;
+
+        Stream(int id, long sendWindow) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+        }
+
+        /**
+         * Wait for the response headers.
+         *
+         * @param timeoutMillis 0 waits forever.
+         */
+        int awaitHeaders(int timeoutMillis) throws IOException {
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long deadline = System.nanoTime() + timeoutNanos;
+            lock.lock();
+            try {
+                while (headers == null) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    if (inFinished) {
+                        throw new ProtocolException("stream " + id + " ended without headers");
+                    }
+                    await(timeoutNanos, deadline);
+                }
+                return status;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, List<String>> headers() {
+            lock.lock();
+            try {
+                return headers;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Read response body.
+         *
+         * @return -1 at the end of the body.
+         */
+        int read(byte[] b, int off, int len, int timeoutMillis) throws IOException {
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long deadline = System.nanoTime() + timeoutNanos;
+            int read;
+            int windowUpdate = 0;
+            lock.lock();
+            try {
+                while (data.isEmpty()) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    if (inFinished) {
+                        return -1;
+                    }
+                    await(timeoutNanos, deadline);
+                }
+                byte[] first = data.peekFirst();
+                read = Math.min(len, first.length - dataOffset);
+                System.arraycopy(first, dataOffset, b, off, read);
+                dataOffset += read;
+                if (dataOffset == first.length) {
+                    data.pollFirst();
+                    dataOffset = 0;
+                }
+                unreadBytes -= read;
+                unackedBytes += read;
+                if (unackedBytes >= STREAM_WINDOW / 2 && !inFinished) {
+                    windowUpdate = unackedBytes;
+                    unackedBytes = 0;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (windowUpdate > 0) {
+                writeLock.lock();
+                try {
+                    writeWindowUpdate(id, windowUpdate);
+                    out.flush();
+                } catch (IOException e) {
+                    fail(e);
+                    throw e;
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+            return read;
+        }
+
+        int available() {
+            lock.lock();
+            try {
+                return unreadBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns true if the response was received completely.
+         */
+        boolean isFinished() {
+            lock.lock();
+            try {
+                return inFinished && error == null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Must hold the lock.
+         */
+        private void await(long timeoutNanos, long deadline) throws IOException {
+            try {
+                if (timeoutNanos == 0) {
+                    changed.await();
+                    return;
+                }
+                long waitNanos = deadline - System.nanoTime();
+                if (waitNanos <= 0) {
+                    throw new SocketTimeoutException("timeout on stream " + id);
+                }
+                changed.awaitNanos(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted reading stream " + id);
+            }
+        }
+    }
+
+    /**
+     * Request body of a stream,written as DATA frames.
+     */
+    final class DataOutputStream extends OutputStream {
+        private final Stream stream;
+        private final byte[] one = new byte[1];
+
+        DataOutputStream(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            one[0] = (byte) b;
+            write(one, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                writeData(stream, b, off, len, false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeData(stream, Util.EMPTY_BYTE_ARRAY, 0, 0, true);
+        }
+    }
+
+    /**
+     * The stream was not processed by the server,it may be retried on another connection.
+     */
+    static final class RefusedStreamException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RefusedStreamException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The server doesn't speak h2,use http/1.1 instead.
+     */
+    static final class UnsupportedProtocolException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedProtocolException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * ALPN of java 9+ and 8u252+,looked up by reflection to run on older versions.
+     */
+    private static final class Alpn {
+        private static final Method SET_APPLICATION_PROTOCOLS = method(SSLParameters.class,
+                "setApplicationProtocols", String[].class);
+        private static final Method GET_APPLICATION_PROTOCOL = method(SSLSocket.class, "getApplicationProtocol");
+
+        private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+            try {
+                return type.getMethod(name, parameterTypes);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        static boolean offer(SSLSocket socket, String... protocols) {
+            if (SET_APPLICATION_PROTOCOLS == null || GET_APPLICATION_PROTOCOL == null) {
+                return false;
+            }
+            try {
+                SSLParameters parameters = socket.getSSLParameters();
+                SET_APPLICATION_PROTOCOLS.invoke(parameters, (Object) protocols);
+                socket.setSSLParameters(parameters);
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        static String selected(SSLSocket socket) {
+            try {
+                return (String) GET_APPLICATION_PROTOCOL.invoke(socket);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,499 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Http/2 {@link HttpEngine},requests to one route are multiplexed over at most {@code maxConnectionsPerRoute}
+ * connections.
+ * <p>
+ * Https negotiates h2 by ALPN,a server which doesn't speak h2 is served by the fallback engine from then on.
+ * Plain http uses h2c with prior knowledge,the server must accept h2 without upgrade.
+ */
+public final class Http2Engine implements HttpEngine {
+
+    private static final int MAX_FOLLOW_UPS = 20;
+
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<>();
+
+    static {
+        CONNECTION_HEADERS.add("connection");
+        CONNECTION_HEADERS.add("keep-alive");
+        CONNECTION_HEADERS.add("proxy-connection");
+        CONNECTION_HEADERS.add("transfer-encoding");
+        CONNECTION_HEADERS.add("upgrade");
+        CONNECTION_HEADERS.add("host");
+        CONNECTION_HEADERS.add("content-length");
+    }
+
+    private final HttpEngine fallback;
+    private final int maxConnectionsPerRoute;
+    private final long keepAliveNanos;
+
+    private final HashMap<Route, List<Http2Connection>> connections = new HashMap<>();
+    /**
+     * routes with a connect in progress,other requests of the route wait for it.
+     */
+    private final Set<Route> connecting = new HashSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    /**
+     * https routes which didn't negotiate h2.
+     */
+    private final Set<Route> http1Routes = ConcurrentHashMap.newKeySet();
+
+    public Http2Engine() {
+        this(new Http1Engine(), 4, 5, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param fallback serves https routes which don't negotiate h2.
+     */
+    public Http2Engine(HttpEngine fallback, int maxConnectionsPerRoute, long keepAliveDuration, TimeUnit timeUnit) {
+        if (fallback == null) throw new NullPointerException("fallback == null");
+        if (maxConnectionsPerRoute <= 0) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute <= 0: " + maxConnectionsPerRoute);
+        }
+        this.fallback = fallback;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.keepAliveNanos = timeUnit.toNanos(keepAliveDuration);
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+        return execute(null, request);
+    }
+
+    @Override
+    public HttpResponse execute(HttpTask call, HttpRequest request) {
+        EventListener listener = call != null ? call.eventListener() : EventListener.NONE;
+        HttpResponse response = new HttpResponse();
+        response.request = request;
+        String requestUrl = request.url();
+        try {
+            HttpRequest current = request;
+            for (int followUps = 0; ; followUps++) {
+                if (Util.strIsEmpty(current.url.host())) {
+                    throw new IllegalArgumentException("no host");
+                }
+                Route route = Route.of(current.url);
+                if (http1Routes.contains(route)) {
+                    HttpResponse http1 = fallback.execute(call, current);
+                    http1.request = request;
+                    return http1;
+                }
+                try {
+                    exchange(route, current, response, call, listener);
+                } catch (Http2Connection.UnsupportedProtocolException e) {
+                    http1Routes.add(route);
+                    followUps--;
+                    continue;
+                }
+                HttpRequest followUp = Http1Engine.followUp(current, response);
+                if (followUp == null) {
+                    break;
+                }
+                if (followUps >= MAX_FOLLOW_UPS) {
+                    throw new ProtocolException("Too many follow-up requests: " + followUps);
+                }
+                Util.closeQuietly(response.data);
+                response.data = null;
+                current = followUp;
+            }
+        } catch (ProtocolException e) {
+            //resets,refused streams and timeouts are told by the code,no trace for them.
+            response.code = HttpConst.REQUEST_PROTOCOL_ERROR;
+            response.message = "request on protocol error," + requestUrl;
+        } catch (IllegalArgumentException e) {
+            response.code = HttpConst.REQUEST_URL_ERROR;
+            response.message = "request on invalid url," + requestUrl;
+        } catch (IOException e) {
+            response.code = HttpConst.REQUEST_IO_ERROR;
+            response.message = "request on io error," + requestUrl;
+        } catch (Exception e) {
+            response.code = HttpConst.REQUEST_UNKNOWN_ERROR;
+            response.message = "request on unknown error," + requestUrl;
+            //a bug rather than a failed exchange.
+            e.printStackTrace();
+        }
+        return response;
+    }
+
+    @Override
+    public void shutdown() {
+        List<Http2Connection> all = new ArrayList<>();
+        lock.lock();
+        try {
+            for (List<Http2Connection> list : connections.values()) {
+                all.addAll(list);
+            }
+            connections.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (Http2Connection connection : all) {
+            connection.close();
+        }
+        fallback.shutdown();
+    }
+
+    /**
+     * Open connections,busy or idle.
+     */
+    public int connectionCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (List<Http2Connection> list : connections.values()) {
+                count += list.size();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void exchange(Route route, HttpRequest request, HttpResponse response, HttpTask call,
+                          EventListener listener) throws IOException {
+        boolean retried = false;
+        while (true) {
+            Http2Connection connection = acquire(route, request.connectTimeout, request.readTimeout, call, listener);
+            listener.connectionAcquired(call, System.nanoTime());
+            Http2Connection.Stream stream = null;
+            Closeable abort = null;
+            try {
+                try {
+                    stream = writeRequest(connection, request, call, listener);
+                    if (call != null) {
+                        //reset if the call deadline passes.
+                        Http2Connection.Stream current = stream;
+                        abort = () -> connection.cancel(current);
+                        call.attach(abort);
+                    }
+                    response.code = stream.awaitHeaders(request.readTimeout);
+                    listener.responseHeadersStart(call, System.nanoTime());
+                } catch (Http2Connection.RefusedStreamException e) {
+                    if (!retried) {
+                        //never processed by the server,safe to send again.
+                        retried = true;
+                        continue;
+                    }
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    if (stream != null) {
+                        connection.cancel(stream);
+                    }
+                    throw e;
+                }
+                response.message = "";
+                response.heders = stream.headers();
+                readBody(connection, stream, request, response, call, listener);
+                return;
+            } finally {
+                if (abort != null) {
+                    call.detach(abort);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a connection of {@code route} with a stream reserved.
+     */
+    private Http2Connection acquire(Route route, int connectTimeout, int readTimeout, HttpTask call,
+                                    EventListener listener) throws IOException {
+        long timeoutNanos = connectTimeout > 0 ? TimeUnit.MILLISECONDS.toNanos(connectTimeout) : 0;
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            Http2Connection leastLoaded = null;
+            lock.lock();
+            try {
+                if (http1Routes.contains(route)) {
+                    throw new Http2Connection.UnsupportedProtocolException("h2 not negotiated by " + route.host);
+                }
+                List<Http2Connection> list = pruneLocked(route);
+                for (Http2Connection connection : list) {
+                    if (connection.reserveStream(0)) {
+                        return connection;
+                    }
+                    if (leastLoaded == null || connection.load() < leastLoaded.load()) {
+                        leastLoaded = connection;
+                    }
+                }
+                if (connecting.contains(route)) {
+                    //another request is connecting,its connection may serve this one too.
+                    long waitNanos = deadline - System.nanoTime();
+                    if (timeoutNanos != 0 && waitNanos <= 0) {
+                        throw new SocketTimeoutException("no free stream to " + route);
+                    }
+                    try {
+                        if (timeoutNanos == 0) {
+                            changed.await();
+                        } else {
+                            changed.awaitNanos(waitNanos);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("interrupted waiting a connection to " + route);
+                    }
+                    continue;
+                }
+                if (list.size() < maxConnectionsPerRoute) {
+                    connecting.add(route);
+                    leastLoaded = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (leastLoaded != null) {
+                //all connections are busy and no more may be opened.
+                long waitNanos = timeoutNanos == 0 ? 0 : Math.max(1, deadline - System.nanoTime());
+                if (leastLoaded.reserveStream(waitNanos == 0 ? Long.MAX_VALUE : waitNanos)) {
+                    return leastLoaded;
+                }
+                if (!leastLoaded.isShutdown() && System.nanoTime() - deadline >= 0 && timeoutNanos != 0) {
+                    throw new SocketTimeoutException("no free stream to " + route);
+                }
+                continue;
+            }
+
+            Http2Connection connection = null;
+            try {
+                connection = Http2Connection.connect(route, connectTimeout, readTimeout, call, listener);
+            } catch (Http2Connection.UnsupportedProtocolException e) {
+                http1Routes.add(route);
+                throw e;
+            } finally {
+                lock.lock();
+                try {
+                    connecting.remove(route);
+                    if (connection != null) {
+                        connections.computeIfAbsent(route, k -> new ArrayList<>(1)).add(connection);
+                    }
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (connection.reserveStream(0)) {
+                return connection;
+            }
+        }
+    }
+
+    /**
+     * Drop connections of {@code route} which are shut down or idle too long.
+     */
+    private List<Http2Connection> pruneLocked(Route route) {
+        List<Http2Connection> list = connections.get(route);
+        if (list == null) {
+            return new ArrayList<>(0);
+        }
+        long now = System.nanoTime();
+        for (Iterator<Http2Connection> iterator = list.iterator(); iterator.hasNext(); ) {
+            Http2Connection connection = iterator.next();
+            if (connection.isShutdown()) {
+                iterator.remove();
+            } else if (connection.idleNanos(now) >= keepAliveNanos) {
+                iterator.remove();
+                connection.close();
+            }
+        }
+        if (list.isEmpty()) {
+            connections.remove(route);
+        }
+        return list;
+    }
+
+    private static Http2Connection.Stream writeRequest(Http2Connection connection, HttpRequest request,
+                                                       HttpTask call, EventListener listener) throws IOException {
+        RequestUrl url = request.url;
+        RequestBody body = request.body;
+        long contentLength = body != null ? body.contentLength() : 0;
+
+        List<String> headers = new ArrayList<>(16);
+        headers.add(":method");
+        headers.add(request.method.toUpperCase(Locale.US));
+        headers.add(":scheme");
+        headers.add(url.scheme());
+        headers.add(":authority");
+        int defaultPort = url.defaultPort(url.scheme());
+        headers.add(url.port() == defaultPort ? url.host() : url.host() + ":" + url.port());
+        headers.add(":path");
+        headers.add(url.encodedPathAndQuery());
+
+        boolean hasAcceptEncoding = false;
+        boolean hasContentType = false;
+        String[] namesAndValues = request.headers.getNamesAndValues();
+        String[] names = request.headers.lowerCaseNames();
+        if (namesAndValues != null) {
+            for (int i = 0, length = namesAndValues.length; i + 1 < length; i += 2) {
+                String name = names[i / 2];
+                String value = namesAndValues[i + 1];
+                //connection specific headers are not allowed in h2.
+                if (CONNECTION_HEADERS.contains(name) || "te".equals(name) && !"trailers".equals(value)) {
+                    continue;
+                }
+                hasAcceptEncoding |= "accept-encoding".equals(name);
+                hasContentType |= "content-type".equals(name);
+                headers.add(name);
+                headers.add(value);
+            }
+        }
+        if (!hasAcceptEncoding) {
+            headers.add("accept-encoding");
+            headers.add(ContentCodings.of(call).acceptEncoding());
+        }
+        if (body != null) {
+            if (!hasContentType && body.contentType() != null) {
+                headers.add("content-type");
+                headers.add(body.contentType().toString());
+            }
+            headers.add("content-length");
+            headers.add(String.valueOf(contentLength));
+        }
+
+        Http2Connection.Stream stream = connection.newStream(headers.toArray(Util.EMPTY_STRING_ARRAY),
+                contentLength <= 0);
+        stream.transparentDecoding = !hasAcceptEncoding;
+        listener.requestHeadersEnd(call, System.nanoTime());
+        if (contentLength > 0) {
+            try {
+                OutputStream out = connection.new DataOutputStream(stream);
+                body.writeTo(out);
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                connection.cancel(stream);
+                throw e;
+            }
+            listener.requestBodyEnd(call, System.nanoTime());
+        } else {
+            connection.flush();
+        }
+        return stream;
+    }
+
+    private static void readBody(Http2Connection connection, Http2Connection.Stream stream, HttpRequest request,
+                                 HttpResponse response, HttpTask call, EventListener listener) throws IOException {
+        StreamBody body = new StreamBody(connection, stream, request.readTimeout, call, listener);
+        boolean decode = stream.transparentDecoding && response.header("Content-Encoding") != null
+                && !"HEAD".equalsIgnoreCase(request.method) && response.code != 204 && response.code != 304;
+        ContentCodings codings = ContentCodings.of(call);
+
+        if (request.streaming) {
+            try {
+                response.data = decode ? Http1Engine.decodeBody(codings, response, body) : body;
+            } catch (IOException | RuntimeException e) {
+                body.close();
+                throw e;
+            }
+            return;
+        }
+
+        MemoryOutputStream buffer = null;
+        InputStream is = body;
+        try {
+            is = decode ? Http1Engine.decodeBody(codings, response, body) : body;
+            long contentLength = -1;
+            String length = response.header("Content-Length");
+            if (length != null) {
+                try {
+                    contentLength = Long.parseLong(length.trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            buffer = HttpWorker.getStreamBuffer(
+                    is != body ? 32768 : Math.max(contentLength > 0 ? (int) Math.min(contentLength, 1 << 20) : 8192, 1024));
+            int len;
+            byte[] bytes = new byte[8192];
+            while ((len = is.read(bytes)) != -1) {
+                buffer.write(bytes, 0, len);
+            }
+        } catch (IOException | RuntimeException e) {
+            Util.closeQuietly(is);
+            body.close();
+            if (buffer != null) {
+                Util.closeQuietly(buffer.toInputStream());
+            }
+            throw e;
+        }
+        //gives the inflater back.
+        Util.closeQuietly(is);
+        body.close();
+        response.data = buffer.toInputStream();
+    }
+
+    /**
+     * Response body read from a stream,closing it early resets the stream.
+     */
+    private static final class StreamBody extends InputStream {
+        private final Http2Connection connection;
+        private final Http2Connection.Stream stream;
+        private final int readTimeout;
+        private final HttpTask call;
+        private final EventListener listener;
+        private boolean closed;
+
+        StreamBody(Http2Connection connection, Http2Connection.Stream stream, int readTimeout, HttpTask call,
+                   EventListener listener) {
+            this.connection = connection;
+            this.stream = stream;
+            this.readTimeout = readTimeout;
+            this.call = call;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int read = stream.read(b, off, len, readTimeout);
+            if (read == -1) {
+                closed = true;
+                listener.responseBodyEnd(call, System.nanoTime());
+            }
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return closed ? 0 : stream.available();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!stream.isFinished()) {
+                connection.cancel(stream);
+            }
+        }
+    }
+}
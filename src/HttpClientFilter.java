@@ -2,14 +2,35 @@
 
 class HttpClientFilter implements HttpFilter{
 
+    private final HttpEngine engine;
+    private final RetryPolicy retryPolicy;
+
+    HttpClientFilter(HttpEngine engine, RetryPolicy retryPolicy) {
+        this.engine = engine;
+        this.retryPolicy = retryPolicy;
+    }
+
     @Override
     public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
-        chain.handleResponse(HttpWorker.doWork(request));
-        return false;
+        HttpTask task = chain.mTask.task();
+        RetryingCall.Attempt attempt = chain.sink() instanceof RetryingCall.Attempt
+                ? (RetryingCall.Attempt) chain.sink() : null;
+        if (attempt != null && attempt.aborted()) {
+            //another attempt won while this one waited.
+            chain.handleResponse(task.canceledResponse());
+            return true;
+        }
+        long start = System.nanoTime();
+        HttpResponse response = task.execute(engine, request, attempt);
+        if (retryPolicy != null && retryPolicy.applies(request) && !RetryPolicy.isRetryable(response)
+                && response.code < HttpConst.REQUEST_PROTOCOL_ERROR) {
+            retryPolicy.recordLatency(request.url.host(), System.nanoTime() - start);
+        }
+        chain.handleResponse(response);
+        return true;
     }
 
     @Override
     public void onResponse(HttpFilterChain chain, HttpResponse response) {
-
     }
 }
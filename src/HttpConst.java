@@ -7,5 +7,8 @@ public class HttpConst {
     public static final int REQUEST_URL_ERROR= 1901;
     public static final int REQUEST_IO_ERROR= 1902;
     public static final int REQUEST_UNKNOWN_ERROR = 1903;
+    public static final int REQUEST_CANCELED = 1904;
+    public static final int REQUEST_TIMEOUT = 1905;
+    public static final int REQUEST_LIMITED = 1906;
 
 }
@@ -0,0 +1,21 @@
+/**
+ * Transport which sends a request and reads its response,used by {@link HttpClientFilter}.
+ * <p>
+ * Failures are reported as response code,see {@link HttpConst}.
+ */
+public interface HttpEngine {
+
+    HttpResponse execute(HttpRequest request);
+
+    /**
+     * Execute {@code request} for {@code call},engines which report {@link EventListener} events override this.
+     */
+    default HttpResponse execute(HttpTask call, HttpRequest request) {
+        return execute(request);
+    }
+
+    /**
+     * Release pooled resources,the engine should not be used after.
+     */
+    void shutdown();
+}
@@ -1,4 +1,11 @@
-
+/**
+ * Sees every request of a {@link LiteHttp} on its way out and its response on the way back.
+ * <p>
+ * A filter is shared by all requests,keep per request state with {@link HttpFilterChain#state(Object)}.
+ * A filter which returns true from {@link #onRequest} holds the request,it must later call exactly one of
+ * {@link HttpFilterChain#handleResponse} or {@link HttpFilterChain#resume()},or return
+ * {@link HttpFilterChain#suspendUntil} to wait for something without blocking a thread.
+ */
 public interface HttpFilter {
 
     boolean onRequest(HttpFilterChain chain, HttpRequest request);
@@ -1,86 +1,178 @@
-import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 
+/**
+ * One request passing the filters of {@link LiteHttp},compiled once into an array shared by all requests.
+ * <p>
+ * The chain only keeps the position of the request and the state filters attach to it by {@link #state(Object)},
+ * so filters are shared and must not keep per request fields.A filter may run the filters after it more than once,
+ * as {@link RetryingCall} does,each run on a chain of its own.
+ */
 public class HttpFilterChain {
 
     HttpTask.AsyncTask mTask;
-    FilterNode node;
+    private final HttpFilter[] filters;
+    /**
+     * filters before this one belong to the parent chain.
+     */
+    private final int first;
+    /**
+     * receives the response of a sub chain instead of the task.
+     */
+    private final Consumer<HttpResponse> sink;
+    /**
+     * The filter handling the request,response is passed back from here.
+     */
+    private int cursor = -1;
+    private HttpRequest request;
+    /**
+     * per request state of each filter,allocated when the first one is set.
+     */
+    private Object[] states;
 
-    public HttpFilterChain(HttpTask.AsyncTask mTask) {
+    public HttpFilterChain(HttpTask.AsyncTask mTask, HttpFilter[] filters) {
         this.mTask = mTask;
+        this.filters = filters;
+        this.first = 0;
+        this.sink = null;
     }
 
-    HttpFilterChain add(Collection<HttpFilter> filters) {
-        for (HttpFilter filter : filters) {
-            add(filter);
-        }
-        return this;
+    /**
+     * Sub chain running {@code request} through the filters of {@code parent} from {@code first} on,its response
+     * goes to {@code sink} after passing back through them.
+     */
+    HttpFilterChain(HttpFilterChain parent, int first, HttpRequest request, Consumer<HttpResponse> sink) {
+        this.mTask = parent.mTask;
+        this.filters = parent.filters;
+        this.first = first;
+        this.cursor = first - 1;
+        this.request = request;
+        this.sink = sink;
     }
 
-    HttpFilterChain add(HttpFilter filter) {
-        if (node == null) {
-            node = FilterNode.obtain(filter);
-        }
-        node.add(filter);
-        return this;
+    /**
+     * Receiver of the response of a sub chain,null for the chain of the task.
+     */
+    Consumer<HttpResponse> sink() {
+        return sink;
+    }
+
+    /**
+     * Index of the current filter.
+     */
+    int position() {
+        return cursor;
+    }
+
+    /**
+     * Start a sub chain.
+     */
+    void start() {
+        dispatch(first);
     }
 
     public void handleRequest(HttpRequest request) {
-        FilterNode head = node;
-        while (head != null) {
-            if (mTask.canceled()) {
-                break;
-            }
-            if (head.filter.onRequest(this, request)) {
-                break;
+        this.request = request;
+        dispatch(0);
+    }
+
+    /**
+     * Pass the request on to the filters after the current one,for a filter which returned true from
+     * {@link HttpFilter#onRequest} but lets the request go later.Runs them on the calling thread.
+     */
+    void proceed() {
+        dispatch(cursor + 1);
+    }
+
+    /**
+     * Like {@link #proceed()},on the request pool so the thread resuming the chain,such as a timer,doesn't run
+     * the rest of it.
+     */
+    public void resume() {
+        mTask.task().dispatch("resume", this::proceed);
+    }
+
+    /**
+     * Suspend the chain at the current filter until {@code stage} completes,then {@link #resume()} it.The request
+     * fails with {@link HttpConst#REQUEST_UNKNOWN_ERROR} if {@code stage} completes exceptionally.No thread waits
+     * meanwhile.
+     *
+     * @return true,for the filter to return from {@link HttpFilter#onRequest}.
+     */
+    public boolean suspendUntil(CompletionStage<?> stage) {
+        stage.whenComplete((result, error) -> {
+            if (error == null) {
+                resume();
+                return;
             }
-            head = head.next;
-        }
-        node = head;
+            HttpResponse response = new HttpResponse();
+            response.request = request;
+            response.code = HttpConst.REQUEST_UNKNOWN_ERROR;
+            response.message = "request on unknown error," + request.url();
+            handleResponse(response);
+        });
+        return true;
     }
 
-    public void handleResponse(HttpResponse response) {
-        FilterNode tail = node;
-        while (tail != null) {
+    private void dispatch(int from) {
+        for (int i = from; i < filters.length; i++) {
             if (mTask.canceled()) {
-                break;
+                //filters passed so far still see a response.
+                cursor = i - 1;
+                handleResponse(mTask.task().canceledResponse());
+                return;
+            }
+            cursor = i;
+            if (filters[i].onRequest(this, this.request)) {
+                return;
             }
-            tail.filter.onResponse(this, response);
-            tail = tail.prev;
-        }
-        //callback here
-        //response code judge success?
-
-        if (mTask.mCallback != null && !mTask.canceled()) {
-            mTask.mCallback.onResponse(response);
         }
     }
-}
-
-class FilterNode {
-    FilterNode prev;
-    FilterNode next;
-    HttpFilter filter;
 
-    FilterNode(FilterNode prev, FilterNode next, HttpFilter filter) {
-        this.prev = prev;
-        this.next = next;
-        this.filter = filter;
+    /**
+     * Filters after the current one will see {@code request} instead.
+     */
+    void replaceRequest(HttpRequest request) {
+        if (request != null) {
+            this.request = request;
+        }
     }
 
-    static FilterNode obtain(HttpFilter node) {
-        return new FilterNode(null, null, node);
+    /**
+     * State the current filter attached to this request,or null.
+     */
+    public Object state() {
+        return states == null || cursor < first ? null : states[cursor];
     }
 
-    FilterNode add(HttpFilter node) {
-        FilterNode newNode = obtain(node);
-        FilterNode lastNode = this;
-        while (lastNode.next != null) {
-            lastNode = lastNode.next;
+    /**
+     * Attach {@code state} of the current filter to this request,it is given back by {@link #state()} in
+     * {@link HttpFilter#onResponse}.
+     */
+    public void state(Object state) {
+        if (states == null) {
+            if (state == null) {
+                return;
+            }
+            states = new Object[filters.length];
         }
-        lastNode.next = newNode;
-        newNode.prev = lastNode;
-        return newNode;
+        states[cursor] = state;
     }
 
+    public void handleResponse(HttpResponse response) {
+        //filters see the response even if the task is cancelled,only the callback is skipped.
+        for (; cursor >= first; cursor--) {
+            filters[cursor].onResponse(this, response);
+        }
+        if (sink != null) {
+            sink.accept(response);
+            return;
+        }
+        //callback here
+        //response code judge success?
 
+        if (mTask.mCallback != null && !mTask.canceled()) {
+            mTask.task().deliver(response);
+        }
+    }
 }
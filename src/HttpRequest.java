@@ -1,6 +1,5 @@
-import com.sun.javaws.exceptions.InvalidArgumentException;
-
 import java.security.InvalidParameterException;
+import java.util.concurrent.TimeUnit;
 
 public class HttpRequest {
     /**
@@ -25,6 +24,13 @@ public class HttpRequest {
      * 5、Retry?
      */
 
+    /**
+     * Priority classes of {@link Builder#priority},a waiting request of a lower class is started first.
+     */
+    public static final int PRIORITY_INTERACTIVE = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_BACKGROUND = 2;
+
     final String method;
     final RequestUrl url;
     final RequestHeaders headers;
@@ -38,6 +44,21 @@ public class HttpRequest {
 
     final int retryLimit;
 
+    /**
+     * Expose the live response body instead of buffering it,see {@link HttpResponse#data}.
+     */
+    final boolean streaming;
+
+    final int priority;
+    /**
+     * time the request may wait for a running slot,0 for no limit.
+     */
+    final long queueTimeoutNanos;
+    /**
+     * time from enqueue to response,0 for the default of the client.
+     */
+    final long callTimeoutNanos;
+
     @Override
     public String toString() {
 
@@ -56,6 +77,10 @@ public class HttpRequest {
         connectTimeout = builder.connectTimeout;
         readTimeout = builder.readTimeout;
         retryLimit = builder.retryLimit;
+        streaming = builder.streaming;
+        priority = builder.priority;
+        queueTimeoutNanos = builder.queueTimeoutNanos;
+        callTimeoutNanos = builder.callTimeoutNanos;
     }
 
     static Builder newBuilder() {
@@ -71,6 +96,30 @@ public class HttpRequest {
         private int connectTimeout = 8 * 1000;
         private int readTimeout = 6 * 1000;
         private int retryLimit = 0;
+        private boolean streaming = false;
+        private int priority = PRIORITY_NORMAL;
+        private long queueTimeoutNanos;
+        private long callTimeoutNanos;
+
+        public Builder() {
+        }
+
+        /**
+         * Builder with all settings of {@code request} copied.
+         */
+        Builder(HttpRequest request) {
+            this.method = request.method;
+            this.url = request.url;
+            this.headers = request.headers;
+            this.body = request.body;
+            this.connectTimeout = request.connectTimeout;
+            this.readTimeout = request.readTimeout;
+            this.retryLimit = request.retryLimit;
+            this.streaming = request.streaming;
+            this.priority = request.priority;
+            this.queueTimeoutNanos = request.queueTimeoutNanos;
+            this.callTimeoutNanos = request.callTimeoutNanos;
+        }
 
         public Builder url(RequestUrl.Builder url) {
             this.url = url.build();
@@ -129,6 +178,11 @@ public class HttpRequest {
             return this;
         }
 
+        Builder headers(RequestHeaders headers) {
+            this.headers = headers;
+            return this;
+        }
+
         public Builder connectTimeout(int connectTimeout) {
             this.connectTimeout = connectTimeout;
             return this;
@@ -144,12 +198,52 @@ public class HttpRequest {
             return this;
         }
 
+        /**
+         * Response body is read from the connection while the consumer reads {@link HttpResponse#data},
+         * the connection is released once it is read to the end or closed.Buffered by default.
+         */
+        public Builder streaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        /**
+         * Priority class,{@link #PRIORITY_NORMAL} by default.Waiting requests of a lower class start first,
+         * a waiting request is aged so it isn't passed forever by later ones of a lower class.
+         */
+        public Builder priority(int priority) {
+            if (priority < PRIORITY_INTERACTIVE || priority > PRIORITY_BACKGROUND) {
+                throw new IllegalArgumentException("unknown priority: " + priority);
+            }
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Fail the request with {@link HttpConst#REQUEST_TIMEOUT} if it hasn't got a running slot within
+         * {@code timeout} after it was enqueued,waiting requests closer to their deadline start first.
+         */
+        public Builder queueTimeout(long timeout, TimeUnit unit) {
+            this.queueTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Deadline of the whole call,queueing,filters,retries and reading the response included.When it passes
+         * the i/o in flight is aborted and the response is {@link HttpConst#REQUEST_TIMEOUT},see
+         * {@link LiteHttp#setCallTimeout}.
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            this.callTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
         HttpRequest build() {
             if (!"GET".equalsIgnoreCase(method) && body == null) {
                 throw new InvalidParameterException("All method need a response body are required,except GET.");
             }
             if (headers == null) {
-                headers = new RequestHeaders.Builder().build();
+                headers = RequestHeaders.DEFAULT;
             }
             return new HttpRequest(this);
         }
@@ -1,4 +1,7 @@
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -7,7 +10,56 @@ public class HttpResponse {
     public HttpRequest request;
     public int code;
     public String message;
+    /**
+     * Body of the response.For a streaming request it is the live stream of the connection,
+     * {@link #close()} it when done.
+     */
     public InputStream data;
     public Map<String, List<String>> heders;
 
+    /**
+     * Returns the last value of header {@code name}(case insensitive),or null.
+     */
+    public String header(String name) {
+        List<String> values = headers(name);
+        return values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    /**
+     * Media type of the body from its Content-Type header,or null.
+     */
+    public MediaType contentType() {
+        String value = header("Content-Type");
+        return value == null ? null : MediaType.parse(value);
+    }
+
+    /**
+     * Read the body to the end as text in the charset of its Content-Type,utf-8 if it has none.
+     */
+    public String string() throws IOException {
+        MediaType contentType = contentType();
+        byte[] bytes = Util.readFully(data);
+        return new String(bytes, contentType != null ? contentType.charset(StandardCharsets.UTF_8)
+                : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Close the body,a streaming response releases its connection.
+     */
+    public void close() {
+        Util.closeQuietly(data);
+    }
+
+    public List<String> headers(String name) {
+        if (heders == null || name == null) {
+            return Collections.emptyList();
+        }
+        for (Map.Entry<String, List<String>> entry : heders.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null) {
+                return entry.getValue();
+            }
+        }
+        return Collections.emptyList();
+    }
+
 }
@@ -1,9 +1,44 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 public final class HttpTask {
 
     private volatile boolean cancel = false;
     private boolean executed = false;
     private final HttpRequest request;
     private LiteHttp mHTTP;
+    /**
+     * result of {@link #execute()} or {@link #executeAsync()},completed as cancelled by {@link #cancel()}.
+     */
+    private volatile CompletableFuture<HttpResponse> future;
+    /**
+     * enqueued task running the chain,removed from the pool if cancelled while waiting.
+     */
+    private volatile AsyncTask queued;
+    /**
+     * receives the response,once.
+     */
+    private Callback callback;
+    private boolean delivered;
+    private volatile TimerWheel.Timeout deadline;
+    /**
+     * nanoTime the call deadline passes,0 for none.
+     */
+    private volatile long deadlineNanos;
+    /**
+     * sockets and streams the call is doing i/o on,closed when the deadline passes.
+     */
+    private List<Closeable> io;
+    private boolean timedOut;
+    /**
+     * hedge or retry whose engine call runs on this thread,its i/o is attached to it too.
+     */
+    private static final ThreadLocal<RetryingCall.Attempt> ATTEMPT = new ThreadLocal<>();
 
     private HttpTask(HttpRequest request, LiteHttp liteHttp) {
         this.mHTTP = liteHttp;
@@ -20,12 +55,309 @@ public final class HttpTask {
                 return;
             }
             executed = true;
+            this.callback = callback;
+        }
+        startDeadline();
+        offer(new AsyncTask("demo", callback));
+    }
+
+    private void startDeadline() {
+        long timeout = request.callTimeoutNanos > 0 ? request.callTimeoutNanos : mHTTP.callTimeoutNanos();
+        if (timeout > 0) {
+            deadlineNanos = System.nanoTime() + timeout;
+            deadline = mHTTP.timer().schedule(this::timeout, timeout, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Nanos left until the call deadline,{@link Long#MAX_VALUE} if there is none.
+     */
+    long remainingNanos() {
+        long end = deadlineNanos;
+        return end == 0 ? Long.MAX_VALUE : end - System.nanoTime();
+    }
+
+    /**
+     * The call deadline passed:stop the task,answer with {@link HttpConst#REQUEST_TIMEOUT} and abort its i/o.
+     * Runs on the timer thread,so the callback and closing the i/o run on the request pool.
+     */
+    private void timeout() {
+        List<Closeable> aborted;
+        Callback target;
+        synchronized (this) {
+            if (delivered || cancel) {
+                return;
+            }
+            timedOut = true;
+            aborted = io;
+            io = null;
+            target = callback;
+            delivered = target != null;
+        }
+        //filters and retries still running see a cancelled task.
+        cancel = true;
+        AsyncTask waiting = queued;
+        if (waiting != null) {
+            mHTTP.executePool().remove(waiting);
+        }
+        mHTTP.executePool().execute(() -> {
+            if (target != null) {
+                HttpResponse response = new HttpResponse();
+                response.request = request;
+                response.code = HttpConst.REQUEST_TIMEOUT;
+                response.message = "request timeout," + request.url();
+                respond(target, response);
+            }
+            if (aborted != null) {
+                for (Closeable closeable : aborted) {
+                    Util.closeQuietly(closeable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hand {@code response} to the callback unless it has got one already.
+     *
+     * @return false if the response was dropped.
+     */
+    boolean deliver(HttpResponse response) {
+        Callback target;
+        synchronized (this) {
+            if (delivered || callback == null) {
+                return false;
+            }
+            delivered = true;
+            target = callback;
+        }
+        TimerWheel.Timeout timer = deadline;
+        if (timer != null) {
+            timer.cancel();
+        }
+        respond(target, response);
+        return true;
+    }
+
+    private void respond(Callback target, HttpResponse response) {
+        target.onResponse(response);
+        eventListener().callEnd(this, System.nanoTime());
+    }
+
+    /**
+     * Register {@code closeable} doing i/o for this call,it is closed if the call deadline passes,or its hedge
+     * loses,before {@link #detach}.
+     *
+     * @return false if the deadline passed already,{@code closeable} is closed.
+     */
+    boolean attach(Closeable closeable) {
+        RetryingCall.Attempt attempt = ATTEMPT.get();
+        if (attempt != null && !attempt.attach(closeable)) {
+            return false;
+        }
+        synchronized (this) {
+            if (!timedOut) {
+                if (io == null) {
+                    io = new ArrayList<>(2);
+                }
+                io.add(closeable);
+                return true;
+            }
+        }
+        Util.closeQuietly(closeable);
+        return false;
+    }
+
+    void detach(Closeable closeable) {
+        RetryingCall.Attempt attempt = ATTEMPT.get();
+        if (attempt != null) {
+            attempt.detach(closeable);
+        }
+        synchronized (this) {
+            if (io != null) {
+                io.remove(closeable);
+            }
+        }
+    }
+
+    /**
+     * @return true if the engine call on this thread isn't wanted anymore,the task was cancelled or timed out,
+     * or its hedge lost.
+     */
+    boolean abandoned() {
+        RetryingCall.Attempt attempt = ATTEMPT.get();
+        return cancel || attempt != null && attempt.aborted();
+    }
+
+    /**
+     * Run {@code request} on {@code engine},i/o it attaches is aborted with {@code attempt} as well,if given.
+     */
+    HttpResponse execute(HttpEngine engine, HttpRequest request, RetryingCall.Attempt attempt) {
+        if (attempt == null) {
+            return engine.execute(this, request);
+        }
+        ATTEMPT.set(attempt);
+        try {
+            return engine.execute(this, request);
+        } finally {
+            ATTEMPT.remove();
+        }
+    }
+
+    TimerWheel timer() {
+        return mHTTP.timer();
+    }
+
+    private void offer(AsyncTask async) {
+        long now = System.nanoTime();
+        eventListener().callQueued(this, now);
+        if (request.queueTimeoutNanos > 0) {
+            async.deadlineNanos = now + request.queueTimeoutNanos;
+        }
+        queued = async;
+        mHTTP.executePool().offer(async);
+        //cancelled before it was queued,missed by cancel().
+        if (cancel) {
+            mHTTP.executePool().remove(async);
+        }
+    }
+
+    /**
+     * Run {@code step} of this task on the request pool,it counts against the running limit as a task does.
+     * A step continues a request already started,so it waits like one a priority class higher.
+     */
+    void dispatch(String name, Runnable step) {
+        mHTTP.executePool().offer(new AsyncTask(name, null, step));
+    }
+
+    TlsConfig tlsConfig() {
+        return mHTTP.tlsConfig();
+    }
+
+    DnsCache dnsCache() {
+        return mHTTP.dnsCache();
+    }
+
+    ContentCodings contentCodings() {
+        return mHTTP.contentCodings();
+    }
+
+    EventListener eventListener() {
+        return mHTTP.eventListener();
+    }
+
+    /**
+     * Run the filter chain on the calling thread and wait for the response.
+     * <p>
+     * A cancelled task returns a response with code {@link HttpConst#REQUEST_CANCELED}.
+     *
+     * @throws IllegalStateException if this task was executed already.
+     */
+    HttpResponse execute() {
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("Already Executed");
+            }
+            executed = true;
+        }
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        future = result;
+        FutureCallback futureCallback = new FutureCallback(result);
+        synchronized (this) {
+            callback = futureCallback;
+        }
+        startDeadline();
+        new AsyncTask("sync", futureCallback).runChain();
+        if (cancel) {
+            result.cancel(false);
+        }
+        try {
+            //returns at once unless a filter answers later on another thread.
+            return result.get();
+        } catch (CancellationException e) {
+            return canceledResponse();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            return canceledResponse();
+        } catch (ExecutionException e) {
+            HttpResponse response = new HttpResponse();
+            response.request = request;
+            response.code = HttpConst.REQUEST_UNKNOWN_ERROR;
+            response.message = "request on unknown error," + request.url();
+            return response;
         }
-        mHTTP.executePool().offer(new AsyncTask("demo", callback));
     }
 
+    /**
+     * Enqueue this task,the future is completed on the thread which delivers the response.
+     * Cancelling the future cancels the task.
+     */
+    CompletableFuture<HttpResponse> executeAsync() {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                HttpTask.this.cancel();
+                return cancelled;
+            }
+        };
+        synchronized (this) {
+            if (executed) {
+                result.completeExceptionally(new IllegalStateException("Already Executed"));
+                return result;
+            }
+            executed = true;
+            callback = new FutureCallback(result);
+        }
+        future = result;
+        startDeadline();
+        offer(new AsyncTask("demo", callback));
+        return result;
+    }
+
+    /**
+     * Cancel this task,it is removed from the pool at once if it is waiting there.
+     */
     void cancel() {
         cancel = true;
+        TimerWheel.Timeout timer = deadline;
+        if (timer != null) {
+            timer.cancel();
+        }
+        AsyncTask waiting = queued;
+        if (waiting != null) {
+            mHTTP.executePool().remove(waiting);
+        }
+        CompletableFuture<HttpResponse> result = future;
+        if (result != null && !result.isDone()) {
+            result.cancel(false);
+        }
+    }
+
+    HttpResponse canceledResponse() {
+        HttpResponse response = new HttpResponse();
+        response.request = request;
+        response.code = HttpConst.REQUEST_CANCELED;
+        response.message = "request canceled," + request.url();
+        return response;
+    }
+
+    private static final class FutureCallback implements Callback {
+        private final CompletableFuture<HttpResponse> future;
+
+        FutureCallback(CompletableFuture<HttpResponse> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void onError() {
+            future.completeExceptionally(new IllegalStateException("request failed"));
+        }
+
+        @Override
+        public void onResponse(HttpResponse response) {
+            future.complete(response);
+        }
     }
 
     /**
@@ -34,27 +366,78 @@ public final class HttpTask {
     final class AsyncTask extends NamedRunnable {
 
         Callback mCallback;
+        /**
+         * runs instead of the filter chain,see {@link #dispatch}.
+         */
+        private final Runnable step;
+        final int priority;
+        /**
+         * nanoTime the task must be started by,0 for none.
+         */
+        long deadlineNanos;
+        /**
+         * order in the waiting queue of the pool,set by the pool.
+         */
+        long rank;
+        long sequence;
 
         AsyncTask(String name, Callback callback) {
+            this(name, callback, null);
+        }
+
+        private AsyncTask(String name, Callback callback, Runnable step) {
             super(String.format("LiteHttp-- %s", name));
             this.mCallback = callback;
+            this.step = step;
+            this.priority = step == null ? request.priority : request.priority - 1;
+        }
+
+        boolean expired(long now) {
+            return deadlineNanos != 0 && now - deadlineNanos >= 0;
+        }
+
+        /**
+         * Dropped by the pool past its deadline,answer with {@link HttpConst#REQUEST_TIMEOUT}.
+         */
+        void expire() {
+            if (cancel || mCallback == null) {
+                return;
+            }
+            HttpResponse response = new HttpResponse();
+            response.request = request;
+            response.code = HttpConst.REQUEST_TIMEOUT;
+            response.message = "request timeout in queue," + request.url();
+            deliver(response);
         }
 
         boolean canceled() {
             return cancel;
         }
 
+        HttpTask task() {
+            return HttpTask.this;
+        }
+
         @Override
         void execute() {
+            try {
+                if (step != null) {
+                    step.run();
+                    return;
+                }
+                eventListener().callDispatched(HttpTask.this, System.nanoTime());
+                runChain();
+            } finally {
+                mHTTP.executePool().finish(this);
+            }
+        }
+
+        void runChain() {
             if (cancel) {
                 return;
             }
-            HttpFilterChain chain = new HttpFilterChain(this);
-            chain.add(mHTTP.filters())
-                    .add(new CacheHttpFilter())
-                    .add(new HttpClientFilter())
-                    .handleRequest(request);
-
+            eventListener().filterChainStart(HttpTask.this, System.nanoTime());
+            new HttpFilterChain(this, mHTTP.pipeline()).handleRequest(request);
         }
 
     }
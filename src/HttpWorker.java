@@ -1,80 +1,48 @@
 import javax.net.ssl.*;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.ArrayDeque;
-import java.util.zip.GZIPInputStream;
 
 class HttpWorker {
 
-    private static final ArrayDeque<MemoryOutputStream> bufferStack = new ArrayDeque<>(8);
-
-    private static MemoryOutputStream getStreamBuffer(int initCapacity) {
-        MemoryOutputStream stream = bufferStack.poll();
-        if (stream == null) {
-            stream = new WorkerOutputBuffer(initCapacity);
-        }
-        stream.reset(initCapacity);
-        return stream;
-    }
-
-    private static class WorkerOutputBuffer extends MemoryOutputStream {
-        WorkerOutputBuffer(int initialCapacity) {
-            super(initialCapacity);
-        }
-
-        @Override
-        public void onClose() {
-            recycleOutputBuffer(this);
-        }
-
-    }
-
-    private static void recycleOutputBuffer(WorkerOutputBuffer workerOutputBuffer) {
-        bufferStack.offer(workerOutputBuffer);
+    static MemoryOutputStream getStreamBuffer(int initCapacity) {
+        return BufferPool.DEFAULT.obtain(initCapacity);
     }
 
-    private static AcceptAllHostnameVerifier hostnameVerifier;
-
-    private static AcceptAllHostnameVerifier hostnameVerifier() {
-        if (hostnameVerifier == null) {
-            hostnameVerifier = new AcceptAllHostnameVerifier();
-        }
-        return hostnameVerifier;
-    }
-
-    private static SSLContext sslContext;
-
-    private static SSLContext sslContext() {
-        if (sslContext == null) {
-            try {
-                sslContext = SSLContext.getInstance("SSL");
-                sslContext.init(null, new TrustManager[]{new AcceptAllTrustManager()}, new SecureRandom());
-            } catch (NoSuchAlgorithmException | KeyManagementException e) {
-                e.printStackTrace();
-            }
-        }
-        return sslContext;
+    static HttpResponse doWork(final HttpRequest request) {
+        return doWork(request, null);
     }
 
-    static HttpResponse doWork(final HttpRequest request) {
+    /**
+     * @param call task of the request,its {@link EventListener} gets the events HttpURLConnection exposes.
+     */
+    static HttpResponse doWork(final HttpRequest request, HttpTask call) {
+        EventListener listener = call != null ? call.eventListener() : EventListener.NONE;
+        ContentCodings codings = ContentCodings.of(call);
         HttpURLConnection connection = null;
+        Closeable abort = null;
         HttpResponse response = new HttpResponse();
+        response.request = request;
         String requestUrl = request.url.toString();
 
         try {
             URL url = new URL(requestUrl);
             connection = (HttpURLConnection) url.openConnection();
+            if (call != null) {
+                //disconnected if the call deadline passes.
+                HttpURLConnection current = connection;
+                abort = current::disconnect;
+                call.attach(abort);
+            }
             connection.setRequestMethod(request.method);
             connection.setConnectTimeout(request.connectTimeout);
             connection.setReadTimeout(request.readTimeout);
-            connection.setRequestProperty("Accept-Encoding", "gzip");
+            connection.setRequestProperty("Accept-Encoding", codings.acceptEncoding());
             connection.setInstanceFollowRedirects(true);
 
             String[] headers = request.headers.getNamesAndValues();
@@ -86,21 +54,36 @@ class HttpWorker {
 
             if (connection instanceof HttpsURLConnection) {
                 HttpsURLConnection sConn = (HttpsURLConnection) connection;
-                sConn.setHostnameVerifier(hostnameVerifier());
-                if (sslContext() != null) {
-                    ((HttpsURLConnection) connection).setSSLSocketFactory(sslContext().getSocketFactory());
+                TlsConfig tls = TlsConfig.of(call);
+                if (tls.hostnameVerifier() != null) {
+                    sConn.setHostnameVerifier(tls.hostnameVerifier());
                 }
+                sConn.setSSLSocketFactory(tls.socketFactory());
             }
 
             //Post  ---> build body
-            if ("POST".equalsIgnoreCase(request.method)) {
-                if (request.body.contentLength() > 0) {
-                    connection.setDoInput(true);
-                    connection.getOutputStream().write(request.body.bytes());
-                }
+            boolean hasBody = "POST".equalsIgnoreCase(request.method) && request.body.contentLength() > 0;
+            if (hasBody) {
+                connection.setDoOutput(true);
+                //stream the body,never buffered by the connection.
+                connection.setFixedLengthStreamingMode(request.body.contentLength());
+            }
+
+            listener.connectStart(call, System.nanoTime());
+            connection.connect();
+            listener.connectEnd(call, System.nanoTime());
+            listener.connectionAcquired(call, System.nanoTime());
+
+            if (hasBody) {
+                OutputStream os = connection.getOutputStream();
+                listener.requestHeadersEnd(call, System.nanoTime());
+                request.body.writeTo(os);
+                os.close();
+                listener.requestBodyEnd(call, System.nanoTime());
             }
 
             int contentLength = connection.getHeaderFieldInt("Content-Length", -1);
+            listener.responseHeadersStart(call, System.nanoTime());
             String encoding = connection.getHeaderField("Content-Encoding");
 
             InputStream is = connection.getInputStream();
@@ -109,25 +92,48 @@ class HttpWorker {
             response.message = connection.getResponseMessage();
             response.heders = connection.getHeaderFields();
 
+            InputStream decoded = is != null ? codings.decode(encoding, is) : null;
+            //identity gives the stream back as it is.
+            boolean compressed = decoded != null && decoded != is;
+            if (decoded != null) {
+                is = decoded;
+            }
+
+            if (is != null && request.streaming) {
+                //closing the stream gives the socket back to the jdk keep-alive cache,no disconnect.
+                response.data = is;
+                if (abort != null) {
+                    call.detach(abort);
+                }
+                return response;
+            }
+
             if (is != null) {
                 MemoryOutputStream byteArrayOutputStream;
-                if ("gzip".equalsIgnoreCase(encoding)) {
-                    is = new GZIPInputStream(is);
+                if (compressed) {
                     byteArrayOutputStream = getStreamBuffer(32768);
                 } else {
                     byteArrayOutputStream = getStreamBuffer(Math.max(contentLength > 0 ? contentLength : 8192, 1024));
                 }
 
-                int len;
-                byte[] buffer = new byte[1024];
-                while ((len = is.read(buffer)) > 0) {
-                    byteArrayOutputStream.write(buffer, 0, len);
+                try {
+                    int len;
+                    byte[] buffer = new byte[1024];
+                    while ((len = is.read(buffer)) > 0) {
+                        byteArrayOutputStream.write(buffer, 0, len);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    //gives the inflater and the buffer back.
+                    Util.closeQuietly(is);
+                    Util.closeQuietly(byteArrayOutputStream.toInputStream());
+                    throw e;
                 }
                 is.close();
                 is = byteArrayOutputStream.toInputStream();
             }
 
             response.data = is;
+            listener.responseBodyEnd(call, System.nanoTime());
 
             try {
                 connection.disconnect();
@@ -152,6 +158,9 @@ class HttpWorker {
             response.message = "request on unknown error,"+requestUrl;
             e.printStackTrace();
         }
+        if (abort != null) {
+            call.detach(abort);
+        }
         if (connection != null) {
             try {
                 connection.disconnect();
@@ -163,14 +172,6 @@ class HttpWorker {
     }
 
 
-    private static class AcceptAllHostnameVerifier implements HostnameVerifier {
-        @Override
-        public boolean verify(String hostname, SSLSession session) {
-            return true;
-        }
-
-    }
-
     /**
      * 证书验证类
      */
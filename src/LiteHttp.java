@@ -1,18 +1,51 @@
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 public final class LiteHttp {
 
     private final ArrayList<HttpFilter> filterContainer = new ArrayList<>(5);
 
-    private final int MAX_RUNNING_SIZE = 10;
-    private int runningLimited = MAX_RUNNING_SIZE;
+    private static final int MAX_RUNNING_SIZE = 10;
+    private volatile int runningLimited = MAX_RUNNING_SIZE;
     private volatile RequestPool pool;
+    private volatile ConcurrencyLimiter limiter;
+    private volatile RateLimitHttpFilter rateLimit;
+    private boolean virtualThreads;
+
+    private static final long DEFAULT_CACHE_SIZE = 10 * 1024 * 1024;
+    private volatile long cacheSize = DEFAULT_CACHE_SIZE;
+    private volatile ResponseCache cache;
+
+    private volatile HttpEngine engine;
+
+    private EventListener eventListener = EventListener.NONE;
+
+    private volatile CallCoalescer coalescer;
+
+    private final RetryPolicy retryPolicy = new RetryPolicy();
+
+    private final ContentCodings contentCodings = new ContentCodings();
+
+    private final DnsCache dnsCache = new DnsCache();
+
+    private volatile TlsConfig tlsConfig = new TlsConfig.Builder().build();
+
+    private volatile RequestHeaders defaultHeaders;
+
+    /**
+     * filters of every request,compiled on first use and again after a change.
+     */
+    private volatile HttpFilter[] pipeline;
+
+    private volatile TimerWheel timer;
+    private long callTimeoutNanos;
 
     RequestPool executePool() {
         if (pool == null) {
             synchronized (RequestPool.class) {
                 if (pool == null) {
-                    pool = new RequestPool(getLimitedRunningSize());
+                    pool = new RequestPool(getLimitedRunningSize(), virtualThreads);
                 }
             }
         }
@@ -20,35 +53,378 @@ public final class LiteHttp {
     }
 
     private int getLimitedRunningSize() {
-        return Math.max(runningLimited, MAX_RUNNING_SIZE);
+        ConcurrencyLimiter limiter = this.limiter;
+        return limiter != null ? limiter.globalLimit() : runningLimited;
+    }
+
+    /**
+     * Requests running on the pool now.
+     */
+    public int runningCallsCount() {
+        return pool == null ? 0 : pool.runningCount();
+    }
+
+    /**
+     * Requests waiting for a free running slot.
+     */
+    public int queuedCallsCount() {
+        return pool == null ? 0 : pool.waitingCount();
     }
 
+    /**
+     * Max requests running at once,{@value #MAX_RUNNING_SIZE} by default.Applies to a running client too,
+     * the start limit of {@link #setAdaptiveConcurrency} if enabled.
+     */
     public LiteHttp setRunningLimited(int runningLimited) {
+        if (runningLimited <= 0) {
+            throw new IllegalArgumentException("runningLimited <= 0: " + runningLimited);
+        }
         this.runningLimited = runningLimited;
+        RequestPool current = pool;
+        if (current != null && limiter == null) {
+            current.setRunningSize(runningLimited);
+        }
+        return this;
+    }
+
+    /**
+     * Adapt the running limit and a limit per host to the latency and errors of the responses instead of
+     * keeping them fixed,see {@link ConcurrencyLimiter}.Both start at the running limit,a request over the limit
+     * of its host waits,once {@code maxQueuePerHost} wait the next get {@link HttpConst#REQUEST_LIMITED}.
+     *
+     * @param maxLimit upper bound of the limits,0 disables adapting and restores the running limit.
+     */
+    public LiteHttp setAdaptiveConcurrency(int maxLimit, int maxQueuePerHost) {
+        ConcurrencyLimiter created = maxLimit == 0 ? null
+                : new ConcurrencyLimiter(this, runningLimited, maxLimit, maxQueuePerHost);
+        synchronized (filterContainer) {
+            limiter = created;
+            pipeline = null;
+        }
+        RequestPool current = pool;
+        if (current != null) {
+            current.setRunningSize(getLimitedRunningSize());
+        }
+        return this;
+    }
+
+    /**
+     * Keep requests within the rates of {@code rateLimit},null to stop.Unlike a filter added by
+     * {@link #addHttpFilter},it runs after the cache and coalescing,so only requests going to the network take
+     * a token.
+     */
+    public LiteHttp setRateLimit(RateLimitHttpFilter rateLimit) {
+        synchronized (filterContainer) {
+            this.rateLimit = rateLimit;
+            pipeline = null;
+        }
+        return this;
+    }
+
+    /**
+     * The adaptive limits,null unless enabled.
+     */
+    ConcurrencyLimiter limiter() {
+        return limiter;
+    }
+
+    /**
+     * Run requests on virtual threads(java 21+) instead of platform threads,concurrency is still
+     * bounded by the running limit.Must be set before the first request.
+     */
+    public LiteHttp setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Max bytes of the in memory response cache,0 disables caching.Entries cached so far are dropped.
+     */
+    public LiteHttp setCacheSize(long cacheSize) {
+        ResponseCache dropped;
+        synchronized (this) {
+            this.cacheSize = cacheSize;
+            dropped = cache;
+            cache = null;
+            pipeline = null;
+        }
+        if (dropped != null) {
+            dropped.evictAll();
+        }
+        return this;
+    }
+
+    ResponseCache cache() {
+        ResponseCache result = cache;
+        if (result == null && cacheSize > 0) {
+            synchronized (this) {
+                result = cache;
+                if (result == null && cacheSize > 0) {
+                    cache = result = new ResponseCache(cacheSize);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Transport of this client,{@link Http1Engine} with a default {@link ConnectionPool} if not set.
+     */
+    public LiteHttp setEngine(HttpEngine engine) {
+        this.engine = engine;
+        pipeline = null;
+        return this;
+    }
+
+    HttpEngine engine() {
+        if (engine == null) {
+            synchronized (HttpEngine.class) {
+                if (engine == null) {
+                    engine = new Http1Engine(new ConnectionPool());
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Let identical GET/HEAD requests in flight share one network call.
+     *
+     * @param keyHeaders headers which tell requests apart besides method and url,
+     *                   {@link CallCoalescer#DEFAULT_KEY_HEADERS} if none given.
+     */
+    public LiteHttp setCoalescing(boolean coalescing, String... keyHeaders) {
+        coalescer = coalescing
+                ? new CallCoalescer(keyHeaders == null || keyHeaders.length == 0 ? null : keyHeaders) : null;
+        pipeline = null;
+        return this;
+    }
+
+    CallCoalescer coalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Backoff between retries of a request,see {@link HttpRequest.Builder#retryLimit}.The n-th retry waits a random
+     * time up to {@code initialMillis * 2^n},at most {@code maxMillis}.
+     */
+    public LiteHttp setRetryBackoff(long initialMillis, long maxMillis) {
+        retryPolicy.setBackoff(initialMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * Send a second copy of an idempotent request still running after the {@code percentile} latency of its host,
+     * the first response wins.0 disables hedging.
+     */
+    public LiteHttp setHedging(double percentile) {
+        retryPolicy.setHedgePercentile(percentile);
+        return this;
+    }
+
+    RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Decode response bodies of {@code coding} too,it is added to Accept-Encoding.
+     */
+    public LiteHttp addContentCoding(ContentCoding coding) {
+        contentCodings.add(coding);
+        return this;
+    }
+
+    /**
+     * Bytes read from the connection at a time while decoding a response body.
+     */
+    public LiteHttp setDecodeBufferSize(int decodeBufferSize) {
+        contentCodings.setDecodeBufferSize(decodeBufferSize);
+        return this;
+    }
+
+    /**
+     * Gzip request bodies of at least {@code minBytes} to hosts which announced Accept-Encoding: gzip in a
+     * response(RFC 7694),-1 to never compress.
+     */
+    public LiteHttp setRequestCompression(long minBytes) {
+        contentCodings.setCompressMinBytes(minBytes);
+        return this;
+    }
+
+    ContentCodings contentCodings() {
+        return contentCodings;
+    }
+
+    /**
+     * Resolve host names with {@code dns} instead of the system resolver,cached entries are dropped.
+     * Used by {@link Http1Engine} and {@link Http2Engine}.
+     */
+    public LiteHttp setDns(Dns dns) {
+        dnsCache.setDns(dns);
+        return this;
+    }
+
+    /**
+     * How long resolved addresses and failed lookups are cached,0 disables caching of that kind.
+     */
+    public LiteHttp setDnsTtl(long ttl, long negativeTtl, TimeUnit unit) {
+        dnsCache.setTtl(ttl, negativeTtl, unit);
+        return this;
+    }
+
+    /**
+     * Start connecting to the next address of a host if the current attempt hasn't finished within
+     * {@code delay},250ms by default.
+     */
+    public LiteHttp setConnectAttemptDelay(long delay, TimeUnit unit) {
+        dnsCache.setAttemptDelay(delay, unit);
+        return this;
+    }
+
+    DnsCache dnsCache() {
+        return dnsCache;
+    }
+
+    /**
+     * Trust,keys and session resumption of https connections,see {@link TlsConfig}.Connections already open
+     * keep their settings.
+     */
+    public LiteHttp setTlsConfig(TlsConfig tlsConfig) {
+        this.tlsConfig = tlsConfig == null ? new TlsConfig.Builder().build() : tlsConfig;
         return this;
     }
 
+    /**
+     * Current tls settings,with the handshake counts.
+     */
+    public TlsConfig tlsConfig() {
+        return tlsConfig;
+    }
+
+    /**
+     * Deadline of every call without its own {@link HttpRequest.Builder#callTimeout},0 for none.
+     */
+    public LiteHttp setCallTimeout(long timeout, TimeUnit unit) {
+        this.callTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    long callTimeoutNanos() {
+        return callTimeoutNanos;
+    }
+
+    /**
+     * Wheel of call deadlines,retry backoffs,hedges and batch deadlines.
+     */
+    TimerWheel timer() {
+        if (timer == null) {
+            synchronized (TimerWheel.class) {
+                if (timer == null) {
+                    timer = new TimerWheel();
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Receive phase timing of every request,{@link EventListener#NONE} to stop.
+     */
+    public LiteHttp setEventListener(EventListener eventListener) {
+        this.eventListener = eventListener == null ? EventListener.NONE : eventListener;
+        return this;
+    }
+
+    EventListener eventListener() {
+        return eventListener;
+    }
+
+    /**
+     * Headers sent with every request,such as Authorization and User-Agent.A request header of the same name
+     * replaces a default one,a request built without headers sends only these.
+     */
+    public LiteHttp setDefaultHeaders(RequestHeaders headers) {
+        this.defaultHeaders = headers == null || headers.size() == 0 ? null : headers;
+        return this;
+    }
+
+    RequestHeaders defaultHeaders() {
+        return defaultHeaders;
+    }
+
     public void addHttpFilter(HttpFilter filter) {
         if (filter == null) {
             return;
         }
-        filterContainer.add(filter);
+        synchronized (filterContainer) {
+            filterContainer.add(filter);
+            pipeline = null;
+        }
     }
 
-    ArrayList<HttpFilter> filters() {
-        return filterContainer;
+    /**
+     * Filters a request passes:the added ones,the cache,coalescing if enabled,retries,rate and concurrency
+     * limits if enabled and the engine last.
+     */
+    HttpFilter[] pipeline() {
+        HttpFilter[] result = pipeline;
+        if (result == null) {
+            synchronized (filterContainer) {
+                result = pipeline;
+                if (result == null) {
+                    ArrayList<HttpFilter> filters = new ArrayList<>(filterContainer.size() + 6);
+                    filters.addAll(filterContainer);
+                    filters.add(new CacheHttpFilter(cache()));
+                    CallCoalescer coalescer = coalescer();
+                    if (coalescer != null) {
+                        filters.add(new CoalescingHttpFilter(coalescer));
+                    }
+                    filters.add(new RetryHttpFilter(retryPolicy, contentCodings));
+                    RateLimitHttpFilter rateLimit = this.rateLimit;
+                    if (rateLimit != null) {
+                        filters.add(rateLimit);
+                    }
+                    ConcurrencyLimiter limiter = this.limiter;
+                    if (limiter != null) {
+                        filters.add(new ConcurrencyLimitFilter(limiter));
+                    }
+                    filters.add(new HttpClientFilter(engine(), retryPolicy));
+                    pipeline = result = filters.toArray(new HttpFilter[0]);
+                }
+            }
+        }
+        return result;
     }
 
     HttpTask obtainTask(HttpRequest request) {
+        RequestHeaders defaults = defaultHeaders;
+        if (defaults != null && !request.headers.derivesFrom(defaults)) {
+            RequestHeaders headers = request.headers == RequestHeaders.DEFAULT
+                    ? defaults : request.headers.withDefaults(defaults);
+            request = new HttpRequest.Builder(request).headers(headers).build();
+        }
         return HttpTask.newTask(request, this);
     }
 
+    /**
+     * Batch of {@code requests} with at most {@code parallelism} of them in flight.
+     */
+    Batch obtainBatch(Collection<HttpRequest> requests, int parallelism) {
+        return new Batch(this, requests, parallelism);
+    }
+
     HttpRequest.Builder obtainRequestBuilder() {
-        return new HttpRequest.Builder();
+        HttpRequest.Builder builder = new HttpRequest.Builder();
+        RequestHeaders defaults = defaultHeaders;
+        return defaults == null ? builder : builder.headers(defaults);
     }
 
+    /**
+     * Builder deriving from the default headers,if any.
+     */
     RequestHeaders.Builder obtainHeadersBuilder() {
-        return new RequestHeaders.Builder();
+        RequestHeaders defaults = defaultHeaders;
+        return defaults == null ? new RequestHeaders.Builder() : defaults.newBuilder();
     }
 
     RequestUrl.Builder obtainUrlBuilder() {
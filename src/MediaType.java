@@ -1,25 +1,28 @@
 import java.nio.charset.Charset;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copy form okhttp3
  *
  * An <a href="http://tools.ietf.org/html/rfc2045">RFC 2045</a> Media Type, appropriate to describe
  * the content type of an HTTP request or response body.
+ * <p>
+ * Parsed media types are shared,content types come from a small set so a string seen before returns the
+ * same instance without parsing.
  */
 public final class MediaType {
-    private static final String TOKEN = "([a-zA-Z0-9-!#$%&'*+.^_`{|}~]+)";
-    private static final String QUOTED = "\"([^\"]*)\"";
-    private static final Pattern TYPE_SUBTYPE = Pattern.compile(TOKEN + "/" + TOKEN);
-    private static final Pattern PARAMETER = Pattern.compile(
-            ";\\s*(?:" + TOKEN + "=(?:" + TOKEN + "|" + QUOTED + "))?");
+    private static final int MAX_CACHED = 256;
+    private static final ConcurrentHashMap<String, MediaType> CACHE = new ConcurrentHashMap<>();
 
     private final String mediaType;
     private final String type;
     private final String subtype;
     private final String charset;
+    /**
+     * resolved {@link #charset},or this if not looked up yet.
+     */
+    private volatile Object resolvedCharset = this;
 
     private MediaType(String mediaType, String type, String subtype, String charset) {
         this.mediaType = mediaType;
@@ -34,37 +37,74 @@ public final class MediaType {
      * @throws IllegalArgumentException if {@code string} is not a well-formed media type.
      */
     public static MediaType get(String string) {
-        Matcher typeSubtype = TYPE_SUBTYPE.matcher(string);
-        if (!typeSubtype.lookingAt()) {
+        MediaType result = CACHE.get(string);
+        if (result == null) {
+            result = doParse(string);
+            //bounded,types past the limit are parsed every time.
+            if (CACHE.size() < MAX_CACHED) {
+                MediaType previous = CACHE.putIfAbsent(string, result);
+                if (previous != null) {
+                    result = previous;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * type "/" subtype *( ";" *whitespace [ token "=" ( token | quoted-string ) ] )
+     */
+    private static MediaType doParse(String string) {
+        int length = string.length();
+        int typeEnd = skipToken(string, 0, length);
+        if (typeEnd == 0 || typeEnd == length || string.charAt(typeEnd) != '/') {
+            throw new IllegalArgumentException("No subtype found for: \"" + string + '"');
+        }
+        int subtypeEnd = skipToken(string, typeEnd + 1, length);
+        if (subtypeEnd == typeEnd + 1) {
             throw new IllegalArgumentException("No subtype found for: \"" + string + '"');
         }
-        String type = typeSubtype.group(1).toLowerCase(Locale.US);
-        String subtype = typeSubtype.group(2).toLowerCase(Locale.US);
+        String type = lowerCase(string.substring(0, typeEnd));
+        String subtype = lowerCase(string.substring(typeEnd + 1, subtypeEnd));
 
         String charset = null;
-        Matcher parameter = PARAMETER.matcher(string);
-        for (int s = typeSubtype.end(); s < string.length(); s = parameter.end()) {
-            parameter.region(s, string.length());
-            if (!parameter.lookingAt()) {
-                throw new IllegalArgumentException("Parameter is not formatted correctly: \""
-                        + string.substring(s)
-                        + "\" for: \""
-                        + string
-                        + '"');
+        for (int pos = subtypeEnd; pos < length; ) {
+            int s = pos;
+            if (string.charAt(pos) != ';') {
+                throw parameterError(string, s);
             }
-
-            String name = parameter.group(1);
-            if (name == null || !name.equalsIgnoreCase("charset")) continue;
+            int nameStart = skipWhitespace(string, pos + 1, length);
+            pos = nameStart;
+            int nameEnd = skipToken(string, nameStart, length);
+            if (nameEnd == nameStart || nameEnd == length || string.charAt(nameEnd) != '=') {
+                //a lone ";"
+                continue;
+            }
+            int valueStart = nameEnd + 1;
+            int valueEnd;
             String charsetParameter;
-            String token = parameter.group(2);
-            if (token != null) {
-                // If the token is 'single-quoted' it's invalid! But we're lenient and strip the quotes.
-                charsetParameter = (token.startsWith("'") && token.endsWith("'") && token.length() > 2)
-                        ? token.substring(1, token.length() - 1)
-                        : token;
+            if (valueStart < length && string.charAt(valueStart) == '"') {
+                // Value is "double-quoted". That's valid,strip the quotes.
+                valueEnd = string.indexOf('"', valueStart + 1);
+                if (valueEnd == -1) {
+                    throw parameterError(string, s);
+                }
+                charsetParameter = string.substring(valueStart + 1, valueEnd);
+                valueEnd++;
             } else {
-                // Value is "double-quoted". That's valid and our regex group already strips the quotes.
-                charsetParameter = parameter.group(3);
+                valueEnd = skipToken(string, valueStart, length);
+                if (valueEnd == valueStart) {
+                    throw parameterError(string, s);
+                }
+                // If the token is 'single-quoted' it's invalid! But we're lenient and strip the quotes.
+                boolean singleQuoted = valueEnd - valueStart > 2 && string.charAt(valueStart) == '\''
+                        && string.charAt(valueEnd - 1) == '\'';
+                charsetParameter = singleQuoted ? string.substring(valueStart + 1, valueEnd - 1)
+                        : string.substring(valueStart, valueEnd);
+            }
+            pos = valueEnd;
+            if (nameEnd - nameStart != 7 || !string.regionMatches(true, nameStart, "charset", 0, 7)) {
+                continue;
             }
             if (charset != null && !charsetParameter.equalsIgnoreCase(charset)) {
                 throw new IllegalArgumentException("Multiple charsets defined: \""
@@ -81,6 +121,50 @@ public final class MediaType {
         return new MediaType(string, type, subtype, charset);
     }
 
+    private static IllegalArgumentException parameterError(String string, int s) {
+        return new IllegalArgumentException("Parameter is not formatted correctly: \""
+                + string.substring(s)
+                + "\" for: \""
+                + string
+                + '"');
+    }
+
+    /**
+     * End of the token starting at {@code pos},{@code pos} if there is none.
+     */
+    private static int skipToken(String string, int pos, int limit) {
+        for (; pos < limit; pos++) {
+            char c = string.charAt(pos);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                continue;
+            }
+            if (c >= 128 || "-!#$%&'*+.^_`{|}~".indexOf(c) == -1) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private static int skipWhitespace(String string, int pos, int limit) {
+        for (; pos < limit; pos++) {
+            char c = string.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\f' && c != 0x0B) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private static String lowerCase(String s) {
+        for (int i = 0, length = s.length(); i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return s.toLowerCase(Locale.US);
+            }
+        }
+        return s;
+    }
+
     /**
      * Returns a media type for {@code string}, or null if {@code string} is not a well-formed media
      * type.
@@ -120,11 +204,16 @@ public final class MediaType {
      * doesn't specify a charset, of it its charset is unsupported by the current runtime.
      */
     public Charset charset(Charset defaultValue) {
-        try {
-            return charset != null ? Charset.forName(charset) : defaultValue;
-        } catch (IllegalArgumentException e) {
-            return defaultValue; // This charset is invalid or unsupported. Give up.
+        Object result = resolvedCharset;
+        if (result == this) {
+            try {
+                result = charset != null ? Charset.forName(charset) : null;
+            } catch (IllegalArgumentException e) {
+                result = null; // This charset is invalid or unsupported. Give up.
+            }
+            resolvedCharset = result;
         }
+        return result != null ? (Charset) result : defaultValue;
     }
 
     /**
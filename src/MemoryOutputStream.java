@@ -31,6 +31,13 @@ public class MemoryOutputStream extends OutputStream {
         return dataBuf;
     }
 
+    /**
+     * Bytes allocated for data.
+     */
+    public int capacity() {
+        return dataBuf == null ? 0 : dataBuf.length;
+    }
+
     public int getDataSize() {
         return writePos;
     }
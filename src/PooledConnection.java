@@ -0,0 +1,105 @@
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+/**
+ * A socket to one {@link Route} which may carry many http/1.1 exchanges,one after another.
+ */
+final class PooledConnection {
+
+    final Route route;
+    final Socket socket;
+    final BufferedInputStream in;
+    final BufferedOutputStream out;
+
+    /**
+     * nano time since the connection went idle,guarded by the pool.
+     */
+    long idleAtNanos = Long.MAX_VALUE;
+    /**
+     * true if at least one exchange was done on this connection.
+     */
+    boolean reused;
+
+    private PooledConnection(Route route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    static PooledConnection connect(Route route, int connectTimeout, int readTimeout, HttpTask call,
+                                    EventListener listener) throws IOException {
+        DnsCache dns = DnsCache.of(call);
+        listener.dnsStart(call, System.nanoTime());
+        List<InetAddress> addresses = dns.lookup(route.host);
+        listener.dnsEnd(call, System.nanoTime());
+        listener.connectStart(call, System.nanoTime());
+        //socket of a channel,so a plain connection can transfer files to it directly.
+        Socket socket = dns.connect(route.host, addresses, route.port, connectTimeout).socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(readTimeout);
+            if (route.isHttps()) {
+                listener.secureConnectStart(call, System.nanoTime());
+                TlsConfig tls = TlsConfig.of(call);
+                SSLSocket sslSocket = tls.createSocket(socket, route.host, route.port);
+                socket = sslSocket;
+                tls.handshake(sslSocket, route.host);
+                listener.secureConnectEnd(call, System.nanoTime());
+            }
+            listener.connectEnd(call, System.nanoTime());
+            return new PooledConnection(route, socket);
+        } catch (IOException | RuntimeException e) {
+            Util.closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if this connection is ready to send a new request.
+     *
+     * @param extensive read the socket to find out a connection closed by peer,costs a short blocking read.
+     */
+    boolean isHealthy(boolean extensive) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        if (!extensive) {
+            return true;
+        }
+        try {
+            int readTimeout = socket.getSoTimeout();
+            try {
+                socket.setSoTimeout(1);
+                in.mark(1);
+                if (in.read() == -1) {
+                    return false;
+                }
+                //data before any request,the stream is out of sync.
+                in.reset();
+                return false;
+            } finally {
+                socket.setSoTimeout(readTimeout);
+            }
+        } catch (SocketTimeoutException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void setReadTimeout(int readTimeout) throws IOException {
+        socket.setSoTimeout(readTimeout);
+    }
+
+    void close() {
+        Util.closeQuietly(socket);
+    }
+}
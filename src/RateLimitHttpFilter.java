@@ -0,0 +1,184 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keep requests within a rate,a token bucket per host or per key of the caller,set by
+ * {@link LiteHttp#setRateLimit(RateLimitHttpFilter)}.
+ * <p>
+ * A request over the rate waits on the timer of {@link LiteHttp} without a thread until its token is due,one
+ * whose token is due after its call deadline gets {@link HttpConst#REQUEST_LIMITED} at once.A Retry-After on a
+ * 429 or 503,or RateLimit-Remaining: 0 with RateLimit-Reset(also X-RateLimit-*),stops the bucket until then.
+ */
+public final class RateLimitHttpFilter implements HttpFilter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final Function<HttpRequest, String> key;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Limit each host to {@code permitsPerSecond},with up to {@code burst} requests at once after a pause.
+     */
+    public RateLimitHttpFilter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, null);
+    }
+
+    /**
+     * @param key bucket of a request,null to let it pass.The host of the url if not given.
+     */
+    public RateLimitHttpFilter(double permitsPerSecond, int burst, Function<HttpRequest, String> key) {
+        checkRate(permitsPerSecond, burst);
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.key = key;
+    }
+
+    /**
+     * Use another rate for requests of {@code key},such as a host with a quota of its own.
+     */
+    public RateLimitHttpFilter limit(String key, double permitsPerSecond, int burst) {
+        checkRate(permitsPerSecond, burst);
+        buckets.put(key, new Bucket(permitsPerSecond, burst));
+        return this;
+    }
+
+    private static void checkRate(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst <= 0) {
+            throw new IllegalArgumentException("invalid rate " + permitsPerSecond + "," + burst);
+        }
+    }
+
+    @Override
+    public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
+        String name = key == null ? request.url.host() : key.apply(request);
+        if (name == null) {
+            return false;
+        }
+        Bucket bucket = buckets.get(name);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(name, k -> new Bucket(permitsPerSecond, burst));
+        }
+        long wait = bucket.reserve();
+        if (wait <= 0) {
+            chain.state(bucket);
+            return false;
+        }
+        HttpTask task = chain.mTask.task();
+        if (wait >= task.remainingNanos()) {
+            bucket.refund();
+            HttpResponse response = new HttpResponse();
+            response.request = request;
+            response.code = HttpConst.REQUEST_LIMITED;
+            response.message = "request rate limited," + request.url();
+            chain.handleResponse(response);
+            return true;
+        }
+        chain.state(bucket);
+        CompletableFuture<Void> due = new CompletableFuture<>();
+        task.timer().schedule(() -> due.complete(null), wait, TimeUnit.NANOSECONDS);
+        return chain.suspendUntil(due);
+    }
+
+    @Override
+    public void onResponse(HttpFilterChain chain, HttpResponse response) {
+        Bucket bucket = (Bucket) chain.state();
+        if (bucket == null) {
+            return;
+        }
+        long pause = pauseNanos(response);
+        if (pause > 0) {
+            bucket.pause(pause);
+        }
+    }
+
+    /**
+     * How long the server asked to stop sending,-1 if it didn't.
+     */
+    static long pauseNanos(HttpResponse response) {
+        if (response.code == 429 || response.code == 503) {
+            long retryAfter = Util.retryAfterNanos(response);
+            if (retryAfter >= 0) {
+                return retryAfter;
+            }
+        }
+        String remaining = header(response, "RateLimit-Remaining");
+        if (remaining == null || !remaining.trim().equals("0")) {
+            return -1;
+        }
+        String reset = header(response, "RateLimit-Reset");
+        if (reset == null) {
+            return -1;
+        }
+        try {
+            long seconds = Long.parseLong(reset.trim());
+            //x-ratelimit-reset of some servers is an epoch second.
+            if (seconds > 1_000_000_000L) {
+                seconds -= TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            }
+            return TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String header(HttpResponse response, String name) {
+        String value = response.header(name);
+        return value != null ? value : response.header("X-" + name);
+    }
+
+    /**
+     * Token bucket kept as the time its next token is due(GCRA),taken with one compare and set.
+     */
+    static final class Bucket {
+        private final long intervalNanos;
+        /**
+         * how far ahead of now tokens may be taken,the burst.
+         */
+        private final long toleranceNanos;
+        private final AtomicLong nextDueNanos = new AtomicLong(System.nanoTime());
+
+        Bucket(double permitsPerSecond, int burst) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+        }
+
+        /**
+         * Take the next token.
+         *
+         * @return nanos until it is due,0 or less if it is now.
+         */
+        long reserve() {
+            while (true) {
+                long now = System.nanoTime();
+                long due = nextDueNanos.get();
+                long start = due - now < 0 ? now : due;
+                if (nextDueNanos.compareAndSet(due, start + intervalNanos)) {
+                    return start - toleranceNanos - now;
+                }
+            }
+        }
+
+        /**
+         * Give back a token taken by {@link #reserve()} which won't be used.
+         */
+        void refund() {
+            nextDueNanos.addAndGet(-intervalNanos);
+        }
+
+        /**
+         * Hand out no token for {@code nanos}.
+         */
+        void pause(long nanos) {
+            long until = System.nanoTime() + nanos + toleranceNanos;
+            while (true) {
+                long due = nextDueNanos.get();
+                if (due - until >= 0 || nextDueNanos.compareAndSet(due, until)) {
+                    return;
+                }
+            }
+        }
+    }
+}
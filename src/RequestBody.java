@@ -1,4 +1,6 @@
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Map;
 
@@ -6,12 +8,22 @@ public abstract class RequestBody {
 
     abstract MediaType contentType();
 
-    abstract int contentLength();
+    abstract long contentLength();
 
     abstract byte[] bytes();
 
+    /**
+     * Write the body to {@code out},a body too large for memory overrides this to stream.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes());
+    }
+
+    /**
+     * Body streamed from {@code file} when sent,the file is never loaded into memory.
+     */
     static RequestBody create(final MediaType type, final File file) {
-        return create(type, BytesConvert.convertFile(file));
+        return new FileRequestBody(type, file);
     }
 
     static RequestBody create(final MediaType type, final String string) throws UnsupportedEncodingException {
@@ -30,7 +42,7 @@ public abstract class RequestBody {
             }
 
             @Override
-            int contentLength() {
+            long contentLength() {
                 return bytes == null ? 0 : bytes.length;
             }
 
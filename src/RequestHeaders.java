@@ -1,29 +1,200 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * Content-Type
  * Cache-Control:Max-Age ...
+ * <p>
+ * Immutable,lookups by name are case insensitive through a hash index built on first use.Common header names
+ * are interned,and headers derived from a base set by {@link #newBuilder()} share its entries and its encoded
+ * http/1.1 form,so a base such as {@link LiteHttp#setDefaultHeaders} is encoded once for all requests.
  */
 public class RequestHeaders {
 
-    private final String[] namesAndValues;
+    private static final String[] COMMON_NAMES = {
+            "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language", "Authorization", "Cache-Control",
+            "Connection", "Content-Encoding", "Content-Length", "Content-Type", "Cookie", "Date", "Expect", "Host",
+            "If-Match", "If-Modified-Since", "If-None-Match", "Keep-Alive", "Origin", "Pragma", "Proxy-Connection",
+            "Range", "Referer", "TE", "Transfer-Encoding", "Upgrade", "User-Agent", "X-Request-Id"
+    };
+    /**
+     * open addressing table of {@link #COMMON_NAMES}.
+     */
+    private static final String[] INTERNED = new String[64];
 
-    private RequestHeaders(Builder builder) {
-        if (Util.collectionIsEmpty(builder.container)) {
-            this.namesAndValues = new String[2];
-            namesAndValues[0] = "Content-Type";
-            namesAndValues[1] = "application/x-www-form-urlencoded";
-        } else {
-            this.namesAndValues = (String[]) builder.container.toArray();
+    static {
+        for (String name : COMMON_NAMES) {
+            int slot = hashIgnoreCase(name) & (INTERNED.length - 1);
+            while (INTERNED[slot] != null) {
+                slot = (slot + 1) & (INTERNED.length - 1);
+            }
+            INTERNED[slot] = name;
         }
     }
 
+    /**
+     * headers of a request built without any.
+     */
+    static final RequestHeaders DEFAULT = new Builder().build();
+
+    private final String[] namesAndValues;
+    /**
+     * headers the first entries were taken from as they are,or null.
+     */
+    private final RequestHeaders base;
+    private final int ownStart;
+
+    /**
+     * slot holds the position+1 of the last entry of a name.
+     */
+    private volatile int[] index;
+    /**
+     * own entries as sent by http/1.1.
+     */
+    private volatile byte[] encoded;
+    private volatile String[] lowerCaseNames;
+
+    private RequestHeaders(String[] namesAndValues, RequestHeaders base) {
+        this.namesAndValues = namesAndValues;
+        this.base = base;
+        this.ownStart = base == null ? 0 : base.namesAndValues.length;
+    }
+
     public String[] getNamesAndValues() {
         return namesAndValues;
     }
 
+    public int size() {
+        return namesAndValues.length / 2;
+    }
+
+    /**
+     * Returns the last value of header {@code name}(case insensitive),or null.
+     */
+    public String get(String name) {
+        int i = indexOf(name);
+        return i == -1 ? null : namesAndValues[i + 1];
+    }
+
+    /**
+     * Position of the last entry named {@code name} in {@link #getNamesAndValues()},or -1.
+     */
+    private int indexOf(String name) {
+        if (namesAndValues.length == 0 || name == null) {
+            return -1;
+        }
+        int[] table = index();
+        int mask = table.length - 1;
+        for (int slot = hashIgnoreCase(name) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int i = table[slot] - 1;
+            if (sameName(namesAndValues[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int[] index() {
+        int[] result = index;
+        if (result == null) {
+            result = new int[Math.max(4, Integer.highestOneBit(namesAndValues.length - 1) << 1)];
+            int mask = result.length - 1;
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                int slot = hashIgnoreCase(namesAndValues[i]) & mask;
+                while (result[slot] != 0 && !sameName(namesAndValues[result[slot] - 1], namesAndValues[i])) {
+                    slot = (slot + 1) & mask;
+                }
+                result[slot] = i + 1;
+            }
+            index = result;
+        }
+        return result;
+    }
+
+    /**
+     * Names in lower case as http/2 sends them,in the order of {@link #getNamesAndValues()}.
+     */
+    String[] lowerCaseNames() {
+        String[] result = lowerCaseNames;
+        if (result == null) {
+            result = new String[size()];
+            if (base != null) {
+                System.arraycopy(base.lowerCaseNames(), 0, result, 0, ownStart / 2);
+            }
+            for (int i = ownStart; i < namesAndValues.length; i += 2) {
+                result[i / 2] = Hpack.lowerCase(namesAndValues[i]);
+            }
+            lowerCaseNames = result;
+        }
+        return result;
+    }
+
+    /**
+     * Write all headers as http/1.1 "name: value" lines,except Content-Length and Transfer-Encoding which are
+     * framing of the engine.
+     */
+    void writeHttp1(OutputStream out) throws IOException {
+        if (base != null) {
+            base.writeHttp1(out);
+        }
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            StringBuilder builder = new StringBuilder(32 * (size() - ownStart / 2) + 2);
+            for (int i = ownStart; i < namesAndValues.length; i += 2) {
+                String name = namesAndValues[i];
+                if (sameName("Content-Length", name) || sameName("Transfer-Encoding", name)) {
+                    continue;
+                }
+                builder.append(name).append(": ").append(namesAndValues[i + 1]).append("\r\n");
+            }
+            encoded = bytes = builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+        }
+        out.write(bytes);
+    }
+
+    /**
+     * Returns true if this is {@code headers} or was derived from it without replacing any of its entries.
+     */
+    boolean derivesFrom(RequestHeaders headers) {
+        for (RequestHeaders current = this; current != null; current = current.base) {
+            if (current == headers) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Headers of {@code defaults} not named in this followed by all of this.
+     */
+    RequestHeaders withDefaults(RequestHeaders defaults) {
+        if (defaults == null || defaults.namesAndValues.length == 0 || derivesFrom(defaults)) {
+            return this;
+        }
+        if (namesAndValues.length == 0) {
+            return defaults;
+        }
+        Builder builder = defaults.newBuilder();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (defaults.indexOf(namesAndValues[i]) != -1) {
+                builder.removeFromBase(namesAndValues[i]);
+            }
+        }
+        builder.addAll(namesAndValues);
+        return builder.build();
+    }
+
+    /**
+     * Builder deriving from this,entries are copied only if one of them is removed.
+     */
+    Builder newBuilder() {
+        Builder builder = new Builder();
+        builder.base = this;
+        return builder;
+    }
+
     @Override
     public String toString() {
         StringBuilder headerBuilder = new StringBuilder();
@@ -43,25 +214,140 @@ public class RequestHeaders {
                 && Arrays.equals(namesAndValues, ((RequestHeaders) obj).namesAndValues);
     }
 
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(namesAndValues);
+    }
+
+    private static boolean sameName(String a, String b) {
+        return a == b || a.equalsIgnoreCase(b);
+    }
 
+    private static int hashIgnoreCase(String name) {
+        int hash = 0;
+        for (int i = 0, length = name.length(); i < length; i++) {
+            char c = name.charAt(i);
+            hash = 31 * hash + (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The common spelling of {@code name} if it is a well known header,else {@code name}.
+     */
+    static String intern(String name) {
+        int mask = INTERNED.length - 1;
+        for (int slot = hashIgnoreCase(name) & mask; INTERNED[slot] != null; slot = (slot + 1) & mask) {
+            if (sameName(INTERNED[slot], name)) {
+                return INTERNED[slot];
+            }
+        }
+        return name;
+    }
 
     public static class Builder {
-        List<String> container;
+        RequestHeaders base;
+        /**
+         * entries of base still to be sent,null if all of them are.
+         */
+        private boolean[] baseRemoved;
+        private String[] container;
+        private int size;
 
         Builder add(String name, String val) {
             if (Util.strIsEmpty(name) || Util.strIsEmpty(val)) {
                 return this;
             }
             if (container == null) {
-                container = new ArrayList<>();
+                container = new String[8];
+            } else if (size == container.length) {
+                container = Arrays.copyOf(container, size * 2);
+            }
+            container[size++] = intern(name);
+            container[size++] = val;
+            return this;
+        }
+
+        /**
+         * Replace all values of {@code name},including those of the base.
+         */
+        Builder set(String name, String val) {
+            return remove(name).add(name, val);
+        }
+
+        /**
+         * Remove all values of {@code name},including those of the base.
+         */
+        Builder remove(String name) {
+            removeFromBase(name);
+            int kept = 0;
+            for (int i = 0; i < size; i += 2) {
+                if (!sameName(container[i], name)) {
+                    container[kept++] = container[i];
+                    container[kept++] = container[i + 1];
+                }
             }
-            container.add(name);
-            container.add(val);
+            for (int i = kept; i < size; i++) {
+                container[i] = null;
+            }
+            size = kept;
             return this;
         }
 
+        private void removeFromBase(String name) {
+            if (base == null || base.indexOf(name) == -1) {
+                return;
+            }
+            String[] baseEntries = base.namesAndValues;
+            if (baseRemoved == null) {
+                baseRemoved = new boolean[baseEntries.length / 2];
+            }
+            for (int i = 0; i < baseEntries.length; i += 2) {
+                if (sameName(baseEntries[i], name)) {
+                    baseRemoved[i / 2] = true;
+                }
+            }
+        }
+
+        private void addAll(String[] namesAndValues) {
+            for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+                add(namesAndValues[i], namesAndValues[i + 1]);
+            }
+        }
+
         RequestHeaders build() {
-            return new RequestHeaders(this);
+            if (base == null) {
+                if (size == 0) {
+                    return new RequestHeaders(new String[]{"Content-Type", "application/x-www-form-urlencoded"},
+                            null);
+                }
+                return new RequestHeaders(Arrays.copyOf(container, size), null);
+            }
+            if (baseRemoved == null) {
+                if (size == 0) {
+                    return base;
+                }
+                String[] baseEntries = base.namesAndValues;
+                String[] namesAndValues = Arrays.copyOf(baseEntries, baseEntries.length + size);
+                System.arraycopy(container, 0, namesAndValues, baseEntries.length, size);
+                return new RequestHeaders(namesAndValues, base);
+            }
+            //some of base removed,copy what is left.
+            String[] baseEntries = base.namesAndValues;
+            String[] namesAndValues = new String[baseEntries.length + size];
+            int count = 0;
+            for (int i = 0; i < baseEntries.length; i += 2) {
+                if (!baseRemoved[i / 2]) {
+                    namesAndValues[count++] = baseEntries[i];
+                    namesAndValues[count++] = baseEntries[i + 1];
+                }
+            }
+            if (size > 0) {
+                System.arraycopy(container, 0, namesAndValues, count, size);
+            }
+            count += size;
+            return new RequestHeaders(count == namesAndValues.length ? namesAndValues
+                    : Arrays.copyOf(namesAndValues, count), null);
         }
     }
 }
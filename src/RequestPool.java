@@ -1,53 +1,185 @@
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Dispatch {@link HttpTask.AsyncTask} with at most {@code runningSize} of them running,the limit may change
+ * while running,see {@link ConcurrencyLimiter}.
+ * <p>
+ * Admission is done with atomic counters only.Tasks over the limit wait in a concurrent skip list ordered by
+ * rank:the time they were enqueued plus {@link #AGING_NANOS} per priority class,or their deadline if that is
+ * earlier.So a lower class starts first,but a waiting task is passed only by tasks enqueued less than the aging
+ * delay after it.A queued task which is cancelled is removed at once,one past its deadline is dropped with
+ * {@link HttpConst#REQUEST_TIMEOUT} instead of started.
+ */
 class RequestPool {
 
-    private int runningSize;
+    /**
+     * aging delay between two priority classes.
+     */
+    static final long AGING_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile int runningSize;
+    private final boolean virtualThreads;
 
-    private final ArrayBlockingQueue<HttpTask.AsyncTask> runningQueue = new ArrayBlockingQueue<>(8);
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
 
-    private final ArrayBlockingQueue<HttpTask.AsyncTask> waitingQueue = new ArrayBlockingQueue<>(8);
+    private final ConcurrentSkipListSet<HttpTask.AsyncTask> waiting = new ConcurrentSkipListSet<>(
+            (a, b) -> a.rank != b.rank ? (a.rank - b.rank < 0 ? -1 : 1) : Long.compare(a.sequence, b.sequence));
     /**
      * running Async task.
      */
-    private ExecutorService executorService;
+    private volatile ExecutorService executorService;
 
     RequestPool(int runningSize) {
+        this(runningSize, false);
+    }
+
+    /**
+     * @param virtualThreads run each task on a virtual thread(java 21+),falls back to platform threads.
+     */
+    RequestPool(int runningSize, boolean virtualThreads) {
         this.runningSize = runningSize;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Change the running limit,tasks already running over a lower one finish.
+     */
+    void setRunningSize(int runningSize) {
+        if (runningSize <= 0) {
+            throw new IllegalArgumentException("runningSize <= 0: " + runningSize);
+        }
+        if (this.runningSize != runningSize) {
+            this.runningSize = runningSize;
+            promote();
+        }
+    }
+
+    int runningSize() {
+        return runningSize;
     }
 
     void offer(HttpTask.AsyncTask async) {
         if (async == null) {
             return;
         }
-        if (runningQueue.size() < runningSize) {
-            runningQueue.offer(async);
+        long now = System.nanoTime();
+        if (async.expired(now)) {
+            async.expire();
+            return;
+        }
+        if (tryAcquire()) {
             executorService().execute(async);
-        } else {
-            waitingQueue.offer(async);
+            return;
+        }
+        long rank = now + async.priority * AGING_NANOS;
+        async.rank = async.deadlineNanos != 0 && async.deadlineNanos - rank < 0 ? async.deadlineNanos : rank;
+        async.sequence = sequence.getAndIncrement();
+        waiting.add(async);
+        waitingCount.incrementAndGet();
+        //a running task may have finished in the meantime.
+        promote();
+    }
+
+    /**
+     * Remove {@code async} if it is still waiting.
+     *
+     * @return true if it was removed,it will never run.
+     */
+    boolean remove(HttpTask.AsyncTask async) {
+        if (async != null && waiting.remove(async)) {
+            waitingCount.decrementAndGet();
+            return true;
         }
+        return false;
     }
 
     void finish(HttpTask.AsyncTask async) {
         if (async == null) {
             return;
         }
-        if (runningQueue.remove(async)) {
-            if (waitingQueue.size() > 0) {
-                offer(waitingQueue.poll());
+        runningCount.decrementAndGet();
+        promote();
+    }
+
+    /**
+     * Run {@code task} at once outside the running limit,for short steps such as answering a task past its
+     * deadline.
+     */
+    void execute(Runnable task) {
+        executorService().execute(task);
+    }
+
+    int runningCount() {
+        return runningCount.get();
+    }
+
+    int waitingCount() {
+        return Math.max(0, waitingCount.get());
+    }
+
+    /**
+     * Run waiting tasks while there are free slots.
+     */
+    private void promote() {
+        while (waitingCount.get() > 0 && tryAcquire()) {
+            HttpTask.AsyncTask next = pollWaiting();
+            if (next == null) {
+                //taken by another thread which hasn't counted it yet.
+                runningCount.decrementAndGet();
+                Thread.yield();
+                continue;
             }
-            return;
+            if (next.expired(System.nanoTime())) {
+                runningCount.decrementAndGet();
+                next.expire();
+                continue;
+            }
+            executorService().execute(next);
         }
-        System.out.println("Finish with wrong async task.");
     }
 
-    private synchronized ExecutorService executorService() {
-        if (executorService == null) {
-            executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
-                    new SynchronousQueue<>(), Util.threadFactory("LiteHttp RequestPool", false));
+    private boolean tryAcquire() {
+        while (true) {
+            int running = runningCount.get();
+            if (running >= runningSize) {
+                return false;
+            }
+            if (runningCount.compareAndSet(running, running + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private HttpTask.AsyncTask pollWaiting() {
+        HttpTask.AsyncTask task = waiting.pollFirst();
+        if (task != null) {
+            waitingCount.decrementAndGet();
+        }
+        return task;
+    }
+
+    private ExecutorService executorService() {
+        ExecutorService executor = executorService;
+        if (executor == null) {
+            synchronized (this) {
+                executor = executorService;
+                if (executor == null && virtualThreads) {
+                    //null before java 21,platform threads then.
+                    executor = Util.virtualThreadExecutor();
+                }
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), Util.threadFactory("LiteHttp RequestPool", false));
+                }
+                executorService = executor;
+            }
         }
-        return executorService;
+        return executor;
     }
 
 
-}
\ No newline at end of file
+}
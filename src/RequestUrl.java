@@ -1,18 +1,57 @@
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+
+/**
+ * Immutable http(s) url.
+ * <p>
+ * The url is kept as its encoded string with the offsets of its parts,parsing a url already in canonical form
+ * allocates nothing else,{@link #toString()} returns that string.Path segments and query parameters are only
+ * split and decoded when asked for.
+ */
 public class RequestUrl {
 
+    /**
+     * encoded form.
+     */
+    private final String url;
     private final String schema;
-    private final String host;
     private final int port;
-    private final String fragment;
-    private final List<String> pathArgs;
+    private final int hostStart;
+    private final int hostEnd;
     /**
-     * Get only
+     * start of the path,end of the host part.
      */
-    private final LinkedHashMap<String, String> queries;
+    private final int pathStart;
+    /**
+     * index of '?',or of the fragment if there is no query.
+     */
+    private final int queryStart;
+    /**
+     * index of '#',or the length of the url.
+     */
+    private final int fragmentStart;
+
+    private String host;
+    private String pathAndQuery;
+    private volatile List<String> pathSegments;
+    private volatile Map<String, String> queries;
+
+    private RequestUrl(String url, String schema, int port, int hostStart, int hostEnd, int pathStart,
+                       int queryStart, int fragmentStart) {
+        this.url = url;
+        this.schema = schema;
+        this.port = port;
+        this.hostStart = hostStart;
+        this.hostEnd = hostEnd;
+        this.pathStart = pathStart;
+        this.queryStart = queryStart;
+        this.fragmentStart = fragmentStart;
+    }
 
     static RequestUrl parse(String url) {
         return newBuilder().parse(url);
@@ -20,49 +59,143 @@ public class RequestUrl {
 
     @Override
     public String toString() {
-        StringBuilder urlBuilder = new StringBuilder();
-        urlBuilder.append(schema)
-                .append("://").append(host);
-        if (port > 0) {
-            urlBuilder.append(":").append(port);
+        return url;
+    }
+
+    /**
+     * Path and query as sent in the request line,"/" at least.
+     */
+    String encodedPathAndQuery() {
+        String result = pathAndQuery;
+        if (result == null) {
+            if (pathStart == fragmentStart) {
+                result = "/";
+            } else if (url.charAt(pathStart) != '/') {
+                result = "/" + url.substring(pathStart, fragmentStart);
+            } else {
+                result = url.substring(pathStart, fragmentStart);
+            }
+            pathAndQuery = result;
         }
-        if (!Util.collectionIsEmpty(pathArgs)) {
-            for (String p : pathArgs) {
-                if (!p.startsWith("/")) {
-                    urlBuilder.append("/");
+        return result;
+    }
+
+    /**
+     * Encoded path,empty if there is none.
+     */
+    String encodedPath() {
+        return url.substring(pathStart, queryStart);
+    }
+
+    /**
+     * Encoded query without '?',or null.
+     */
+    String encodedQuery() {
+        return queryStart < fragmentStart ? url.substring(queryStart + 1, fragmentStart) : null;
+    }
+
+    String fragment() {
+        return fragmentStart < url.length() ? url.substring(fragmentStart + 1) : null;
+    }
+
+    /**
+     * Encoded segments of the path,split on first use.
+     */
+    List<String> pathSegments() {
+        List<String> result = pathSegments;
+        if (result == null) {
+            result = new ArrayList<>(4);
+            int pos = pathStart;
+            while (pos < queryStart) {
+                if (url.charAt(pos) == '/') {
+                    pos++;
+                }
+                int end = indexOf(url, '/', pos, queryStart);
+                result.add(url.substring(pos, end));
+                pos = end;
+            }
+            pathSegments = result = Collections.unmodifiableList(result);
+        }
+        return result;
+    }
+
+    /**
+     * Decoded value of the first query parameter {@code name},"" for a name without value,or null.
+     */
+    String queryParameter(String name) {
+        Map<String, String> result = queries;
+        if (result == null) {
+            LinkedHashMap<String, String> parsed = new LinkedHashMap<>();
+            int pos = queryStart + 1;
+            while (pos < fragmentStart) {
+                int end = indexOf(url, '&', pos, fragmentStart);
+                int equals = indexOf(url, '=', pos, end);
+                if (end > pos) {
+                    parsed.putIfAbsent(decode(url.substring(pos, equals)),
+                            equals < end ? decode(url.substring(equals + 1, end)) : "");
                 }
-                urlBuilder.append(p);
+                pos = end + 1;
             }
+            queries = result = Collections.unmodifiableMap(parsed);
         }
-        if (!Util.collectionIsEmpty(queries)) {
-            urlBuilder.append("?");
-            Util.buildQueryString(urlBuilder, queries);
+        return result.get(name);
+    }
+
+    private static String decode(String encoded) {
+        if (encoded.indexOf('%') == -1 && encoded.indexOf('+') == -1) {
+            return encoded;
         }
-        if (!Util.strIsEmpty(fragment)) {
-            urlBuilder.append("#")
-                    .append(fragment);
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return encoded;
         }
-        return urlBuilder.toString();
     }
 
-    public static Builder newBuilder() {
-        return new Builder();
+    private static int indexOf(String s, char c, int pos, int limit) {
+        for (int i = pos; i < limit; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return limit;
     }
 
-    private RequestUrl(Builder builder) {
-        schema = builder.scheme;
-        host = builder.host;
-        pathArgs = builder.pathArgs;
-        queries = builder.queries;
-        port = builder.port != -1 ? defaultPort(schema) : builder.port;
-        fragment = builder.fragment;
+    public static Builder newBuilder() {
+        return new Builder();
     }
 
     boolean isHttps() {
         return "https".equals(schema);
     }
 
+    String scheme() {
+        return schema;
+    }
+
+    /**
+     * Host,or null if the url has none.
+     */
+    String host() {
+        String result = host;
+        if (result == null && hostEnd > hostStart) {
+            host = result = url.substring(hostStart, hostEnd);
+        }
+        return result;
+    }
+
+    /**
+     * Explicit port,or the default one of the scheme.
+     */
+    int port() {
+        return port;
+    }
+
     int defaultPort(String scheme) {
+        return defaultPortOf(scheme);
+    }
+
+    private static int defaultPortOf(String scheme) {
         if ("http".equals(scheme)) {
             return 80;
         } else if ("https".equals(scheme)) {
@@ -79,6 +212,10 @@ public class RequestUrl {
         String fragment;
         List<String> pathArgs;
         LinkedHashMap<String, String> queries;
+        /**
+         * query of a parsed url,already encoded.
+         */
+        String encodedQuery;
 
         public Builder schema(String schema) {
             this.scheme = schema;
@@ -121,12 +258,57 @@ public class RequestUrl {
             return this;
         }
 
+        /**
+         * Url of this builder,queries added by {@link #addQuery} are encoded here.
+         */
         RequestUrl build() {
-            return new RequestUrl(this);
+            int resolvedPort = port == -1 ? defaultPortOf(scheme) : port;
+            StringBuilder builder = new StringBuilder(64);
+            builder.append(scheme).append("://");
+            int hostStart = builder.length();
+            if (host != null) {
+                builder.append(host);
+            }
+            int hostEnd = builder.length();
+            if (resolvedPort > 0 && resolvedPort != defaultPortOf(scheme)) {
+                builder.append(':').append(resolvedPort);
+            }
+            int pathStart = builder.length();
+            if (!Util.collectionIsEmpty(pathArgs)) {
+                for (String p : pathArgs) {
+                    if (!p.startsWith("/")) {
+                        builder.append('/');
+                    }
+                    builder.append(p);
+                }
+            }
+            int queryStart = builder.length();
+            boolean hasQueries = !Util.collectionIsEmpty(queries);
+            if (encodedQuery != null || hasQueries) {
+                builder.append('?');
+                if (encodedQuery != null) {
+                    builder.append(encodedQuery);
+                }
+                if (hasQueries) {
+                    if (!Util.strIsEmpty(encodedQuery)) {
+                        builder.append('&');
+                    }
+                    Util.buildQueryString(builder, queries);
+                }
+            }
+            int fragmentStart = builder.length();
+            if (!Util.strIsEmpty(fragment)) {
+                builder.append('#').append(fragment);
+            }
+            return new RequestUrl(builder.toString(), scheme, resolvedPort, hostStart, hostEnd, pathStart,
+                    queryStart, fragmentStart);
         }
 
         /**
          * Copy from okhttp
+         * <p>
+         * Path,query and fragment are kept as encoded in {@code url}.A url in canonical form,lower case scheme
+         * and no default port,is used as it is.
          */
         public RequestUrl parse(String url) {
             if (Util.strIsEmpty(url)) {
@@ -135,6 +317,7 @@ public class RequestUrl {
             //check whitespace,head & tail.
             int pos = Util.skipLeadingAsciiWhitespace(url, 0, url.length());
             int limit = Util.skipTrailingAsciiWhitespace(url, pos, url.length());
+            boolean canonical = pos == 0 && limit == url.length();
 
             // Scheme
             // Delimiter 分隔符
@@ -142,9 +325,11 @@ public class RequestUrl {
             if (schemeDelimiterOffset != -1) {
                 if (url.regionMatches(true, pos, "https:", 0, 6)) {
                     this.scheme = "https";
+                    canonical &= url.startsWith("https:", pos);
                     pos += "https:".length();
                 } else if (url.regionMatches(true, pos, "http:", 0, 5)) {
                     this.scheme = "http";
+                    canonical &= url.startsWith("http:", pos);
                     pos += "http:".length();
                 } else {
                     throw new IllegalArgumentException("Expected URL scheme 'http' or 'https' but was '"
@@ -157,61 +342,47 @@ public class RequestUrl {
 
             // Host
             // host[:port]
+            int hostStart = pos;
+            int hostEnd = pos;
             int slashCount = slashCount(url, pos, limit);
+            canonical &= slashCount == 2 && url.charAt(pos) == '/' && url.charAt(pos + 1) == '/';
             if (slashCount >= 2) {
                 pos += slashCount;
                 //find first delimiter char / \\ ? #
                 int firstDelimiter = delimiterOffset(url, pos, limit, "/\\?#");
-                int c = firstDelimiter == limit ? -1 : url.charAt(firstDelimiter);
-                switch (c) {
-                    case -1:
-                    case '/':
-                    case '\\':
-                    case '?':
-                    case '#':
-                        // find host last pos;
-                        int colonPos = delimiterOffset(url, pos, firstDelimiter, ":");
-                        if (colonPos == firstDelimiter) {
-                            //only host
-                            this.host = url.substring(pos, firstDelimiter);
-                        } else {
-                            this.host = url.substring(pos, colonPos);
-                            this.port = parsePort(url, colonPos + 1, firstDelimiter);
-                        }
-                        pos = firstDelimiter;
-                        break;
+                // find host last pos,an ipv6 host is in [...].
+                int colonPos = portColonOffset(url, pos, firstDelimiter);
+                hostStart = pos;
+                hostEnd = colonPos;
+                if (colonPos < firstDelimiter) {
+                    this.port = parsePort(url, colonPos + 1, firstDelimiter);
+                    canonical &= port != -1 && port != defaultPortOf(scheme);
                 }
+                pos = firstDelimiter;
             } else {
                 //No host
+                hostStart = hostEnd = pos;
             }
 
-            //extend path
+            int pathStart = pos;
             int pathDelimiterOffset = delimiterOffset(url, pos, limit, "?#");
-            if (pathDelimiterOffset <= limit) {
-                contact(url.substring(pos, pathDelimiterOffset));
-            }
-            pos = pathDelimiterOffset;
-
-            //query params
-            if (pos < limit && url.charAt(pos) == '?') {
-                int fragmentDelimiterOffset = delimiterOffset(url, pos, limit, "#");
-                if (fragmentDelimiterOffset < limit) {
-                    String queries = url.substring(pos + 1, fragmentDelimiterOffset);
-                    String[] c = queries.split("&");
-                    for (String q : c) {
-                        String[] split = q.split("=");
-                        if (split.length < 2) {
-                            continue;
-                        }
-                        addQuery(split[0], split[1]);
-                    }
-                }
-                pos = fragmentDelimiterOffset;
+            int fragmentStart = delimiterOffset(url, pathDelimiterOffset, limit, "#");
+
+            if (canonical && pathArgs == null && queries == null && hostEnd > hostStart) {
+                return new RequestUrl(url, scheme, port == -1 ? defaultPortOf(scheme) : port, hostStart, hostEnd,
+                        pathStart, pathDelimiterOffset, fragmentStart);
             }
 
-            //fragment
-            if (pos < limit && url.charAt(pos) == '#') {
-                fragment = url.substring(pos + 1, limit);
+            //not canonical,or more parts in this builder.
+            this.host = hostEnd > hostStart ? url.substring(hostStart, hostEnd) : null;
+            if (pathDelimiterOffset > pathStart) {
+                contact(url.substring(pathStart, pathDelimiterOffset));
+            }
+            if (pathDelimiterOffset < fragmentStart) {
+                encodedQuery = url.substring(pathDelimiterOffset + 1, fragmentStart);
+            }
+            if (fragmentStart < limit) {
+                fragment = url.substring(fragmentStart + 1, limit);
             }
             return build();
         }
@@ -222,17 +393,18 @@ public class RequestUrl {
          * **            16      |       16        **
          */
         private int parsePort(String url, int i, int firstDelimiter) {
-            int port;
-            String portStr = url.substring(i, firstDelimiter);
-            try {
-                port = Integer.parseInt(portStr);
-                if (port < 0 || port > 65535) {
-                    port = -1;
+            int port = 0;
+            if (i == firstDelimiter || firstDelimiter - i > 5) {
+                return -1;
+            }
+            for (; i < firstDelimiter; i++) {
+                char c = url.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
                 }
-            } catch (Exception e) {
-                port = -1;
+                port = port * 10 + (c - '0');
             }
-            return port;
+            return port > 65535 ? -1 : port;
         }
 
         private int delimiterOffset(String url, int pos, int limit, String s) {
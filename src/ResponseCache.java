@@ -0,0 +1,389 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In memory http response cache,LRU evicted by bytes.
+ * <p>
+ * Entries are keyed by request url,only GET responses are stored.Freshness is computed as rfc7234 describes:
+ * Cache-Control max-age,then Expires,then 10% of the Last-Modified age as heuristic.
+ */
+class ResponseCache {
+
+    private final long maxSize;
+    private long size;
+    /**
+     * access ordered,the eldest entry is the least recently used one.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int hitCount;
+    private int conditionalHitCount;
+    private int networkCount;
+
+    ResponseCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+    }
+
+    static String key(HttpRequest request) {
+        return request.url();
+    }
+
+    /**
+     * Returns the entry which matches {@code request},including its Vary headers.
+     */
+    synchronized Entry get(HttpRequest request) {
+        Entry entry = entries.get(key(request));
+        if (entry == null || !entry.matches(request)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Store {@code response} if it is cacheable,the body is buffered and {@code response.data} is replaced
+     * with a stream over the buffered bytes.
+     *
+     * @return true if the response was stored.
+     */
+    boolean put(HttpRequest request, HttpResponse response, long sentMillis, long receivedMillis) {
+        if (!isCacheable(request, response)) {
+            return false;
+        }
+        byte[] body;
+        try {
+            body = Util.readFully(response.data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            response.data = null;
+            return false;
+        }
+        response.data = new ByteArrayInputStream(body);
+
+        Entry entry = new Entry(request, response.code, response.message, copyHeaders(response.heders), body,
+                sentMillis, receivedMillis);
+        String key = key(request);
+        synchronized (this) {
+            if (entry.size > maxSize) {
+                Entry old = entries.remove(key);
+                if (old != null) {
+                    size -= old.size;
+                }
+                return false;
+            }
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                size -= old.size;
+            }
+            size += entry.size;
+            trimToSize();
+        }
+        return true;
+    }
+
+    /**
+     * Merge the headers of a 304 response into {@code cached},then fill {@code response} as the cached one.
+     */
+    void update(Entry cached, HttpResponse response, long sentMillis, long receivedMillis) {
+        Map<String, List<String>> headers = copyHeaders(cached.headers);
+        if (response.heders != null) {
+            for (Map.Entry<String, List<String>> header : response.heders.entrySet()) {
+                String name = header.getKey();
+                //status line or representation headers of the 304 itself.
+                if (name == null || "Content-Length".equalsIgnoreCase(name)
+                        || "Content-Encoding".equalsIgnoreCase(name)
+                        || "Content-Type".equalsIgnoreCase(name)) {
+                    continue;
+                }
+                headers.put(name, header.getValue());
+            }
+        }
+        Entry entry = new Entry(cached.varyRequest, cached.code, cached.message, headers, cached.body,
+                sentMillis, receivedMillis);
+        synchronized (this) {
+            String key = key(cached.varyRequest);
+            //replace only if nobody stored a newer response meanwhile.
+            if (entries.get(key) == cached) {
+                entries.put(key, entry);
+                size += entry.size - cached.size;
+                trimToSize();
+            }
+            conditionalHitCount++;
+        }
+        entry.fill(response);
+    }
+
+    synchronized void remove(HttpRequest request) {
+        Entry entry = entries.remove(key(request));
+        if (entry != null) {
+            size -= entry.size;
+        }
+    }
+
+    synchronized void evictAll() {
+        entries.clear();
+        size = 0;
+    }
+
+    synchronized void trackHit() {
+        hitCount++;
+    }
+
+    synchronized void trackNetwork() {
+        networkCount++;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    long maxSize() {
+        return maxSize;
+    }
+
+    synchronized int hitCount() {
+        return hitCount;
+    }
+
+    synchronized int conditionalHitCount() {
+        return conditionalHitCount;
+    }
+
+    synchronized int networkCount() {
+        return networkCount;
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.size;
+        }
+    }
+
+    static boolean isCacheable(HttpRequest request, HttpResponse response) {
+        //never buffer a streaming body.
+        if (!"GET".equalsIgnoreCase(request.method) || response.data == null || request.streaming) {
+            return false;
+        }
+        switch (response.code) {
+            case 200:
+            case 203:
+            case 204:
+            case 300:
+            case 301:
+            case 308:
+            case 404:
+            case 405:
+            case 410:
+            case 414:
+            case 501:
+                break;
+            case 302:
+            case 307:
+                //only with explicit freshness.
+                CacheControl control = CacheControl.parse(response.headers("Cache-Control"), null);
+                if (response.header("Expires") == null && control.maxAgeSeconds == -1
+                        && !control.isPublic && !control.isPrivate) {
+                    return false;
+                }
+                break;
+            default:
+                return false;
+        }
+        if ("*".equals(response.header("Vary"))) {
+            return false;
+        }
+        return !CacheControl.parse(response.headers("Cache-Control"), null).noStore
+                && !requestCacheControl(request).noStore;
+    }
+
+    static CacheControl requestCacheControl(HttpRequest request) {
+        String value = request.headers.get("Cache-Control");
+        return CacheControl.parse(value == null ? null : Collections.singletonList(value),
+                request.headers.get("Pragma"));
+    }
+
+    private static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey() != null && header.getValue() != null) {
+                    copy.put(header.getKey(), new ArrayList<>(header.getValue()));
+                }
+            }
+        }
+        return copy;
+    }
+
+    static final class Entry {
+        /**
+         * the request which produced this entry,used to match Vary headers.
+         */
+        final HttpRequest varyRequest;
+        final int code;
+        final String message;
+        final Map<String, List<String>> headers;
+        final byte[] body;
+        final long sentMillis;
+        final long receivedMillis;
+        final long size;
+
+        private final CacheControl cacheControl;
+        private final long servedDate;
+        private final long expires;
+        private final long lastModified;
+        private final String etag;
+        private final String lastModifiedString;
+        private final int ageSeconds;
+
+        Entry(HttpRequest varyRequest, int code, String message, Map<String, List<String>> headers, byte[] body,
+              long sentMillis, long receivedMillis) {
+            this.varyRequest = varyRequest;
+            this.code = code;
+            this.message = message;
+            this.headers = headers;
+            this.body = body;
+            this.sentMillis = sentMillis;
+            this.receivedMillis = receivedMillis;
+
+            this.cacheControl = CacheControl.parse(headers.get("Cache-Control"), null);
+            this.servedDate = Util.parseHttpDate(first(headers, "Date"));
+            this.expires = Util.parseHttpDate(first(headers, "Expires"));
+            this.lastModifiedString = first(headers, "Last-Modified");
+            this.lastModified = Util.parseHttpDate(lastModifiedString);
+            this.etag = first(headers, "ETag");
+            int age = -1;
+            try {
+                String value = first(headers, "Age");
+                if (value != null) {
+                    age = Integer.parseInt(value.trim());
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            this.ageSeconds = age;
+
+            long headerSize = 0;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                for (String value : header.getValue()) {
+                    headerSize += header.getKey().length() + (value == null ? 0 : value.length());
+                }
+            }
+            this.size = body.length + headerSize * 2;
+        }
+
+        private static String first(Map<String, List<String>> headers, String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        boolean matches(HttpRequest request) {
+            List<String> vary = headers.get("Vary");
+            if (vary == null) {
+                return true;
+            }
+            for (String value : vary) {
+                for (String name : value.split(",")) {
+                    name = name.trim();
+                    if (name.isEmpty()) {
+                        continue;
+                    }
+                    String cached = varyRequest.headers.get(name);
+                    String current = request.headers.get(name);
+                    if (cached == null ? current != null : !cached.equals(current)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        boolean hasValidators() {
+            return etag != null || lastModified != -1;
+        }
+
+        /**
+         * Returns true if this entry may be served without validation for {@code request} at {@code nowMillis}.
+         */
+        boolean isFresh(CacheControl requestControl, long nowMillis) {
+            if (cacheControl.noCache || requestControl.noCache) {
+                return false;
+            }
+            long ageMillis = ageMillis(nowMillis);
+            long freshMillis = freshnessLifetime();
+            if (requestControl.maxAgeSeconds != -1) {
+                freshMillis = Math.min(freshMillis, requestControl.maxAgeSeconds * 1000L);
+            }
+            long minFreshMillis = requestControl.minFreshSeconds != -1 ? requestControl.minFreshSeconds * 1000L : 0;
+            long maxStaleMillis = 0;
+            if (!cacheControl.mustRevalidate && requestControl.maxStaleSeconds != -1) {
+                maxStaleMillis = requestControl.maxStaleSeconds * 1000L;
+            }
+            return ageMillis + minFreshMillis < freshMillis + maxStaleMillis;
+        }
+
+        /**
+         * Current age,see rfc7234 section 4.2.3.
+         */
+        private long ageMillis(long nowMillis) {
+            long apparentReceivedAge = servedDate != -1 ? Math.max(0, receivedMillis - servedDate) : 0;
+            long receivedAge = ageSeconds != -1
+                    ? Math.max(apparentReceivedAge, ageSeconds * 1000L) : apparentReceivedAge;
+            long responseDuration = receivedMillis - sentMillis;
+            long residentDuration = nowMillis - receivedMillis;
+            return receivedAge + responseDuration + residentDuration;
+        }
+
+        private long freshnessLifetime() {
+            if (cacheControl.maxAgeSeconds != -1) {
+                return cacheControl.maxAgeSeconds * 1000L;
+            }
+            long served = servedDate != -1 ? servedDate : receivedMillis;
+            if (expires != -1) {
+                return Math.max(0, expires - served);
+            }
+            if (lastModified != -1 && varyRequest.url().indexOf('?') == -1) {
+                //heuristic freshness,rfc7234 section 4.2.2
+                return Math.max(0, (served - lastModified) / 10);
+            }
+            return 0;
+        }
+
+        /**
+         * The request with validators of this entry added.
+         */
+        HttpRequest conditionalRequest(HttpRequest request) {
+            RequestHeaders.Builder headers = request.headers.newBuilder();
+            if (etag != null) {
+                headers.add("If-None-Match", etag);
+            } else if (lastModifiedString != null) {
+                headers.add("If-Modified-Since", lastModifiedString);
+            }
+            return new HttpRequest.Builder(request).headers(headers.build()).build();
+        }
+
+        HttpResponse response(HttpRequest request) {
+            HttpResponse response = new HttpResponse();
+            response.request = request;
+            fill(response);
+            return response;
+        }
+
+        private void fill(HttpResponse response) {
+            response.code = code;
+            response.message = message;
+            response.heders = Collections.unmodifiableMap(headers);
+            response.data = new ByteArrayInputStream(body);
+        }
+    }
+}
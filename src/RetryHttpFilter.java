@@ -0,0 +1,34 @@
+/**
+ * Compress the request body and run the attempts of a request under {@link RetryPolicy},see
+ * {@link RetryingCall}.
+ * <p>
+ * It sits before the rate and concurrency limits,so every attempt,a retry or a hedge,takes a token and a
+ * permit of its own,and a pause asked by a failed attempt holds back its retry.
+ */
+class RetryHttpFilter implements HttpFilter {
+
+    private final RetryPolicy retryPolicy;
+    private final ContentCodings contentCodings;
+
+    RetryHttpFilter(RetryPolicy retryPolicy, ContentCodings contentCodings) {
+        this.retryPolicy = retryPolicy;
+        this.contentCodings = contentCodings;
+    }
+
+    @Override
+    public boolean onRequest(HttpFilterChain chain, HttpRequest request) {
+        request = contentCodings.compress(request);
+        if (retryPolicy.applies(request)) {
+            //response may come later,from another thread.
+            new RetryingCall(retryPolicy, chain, request).start();
+            return true;
+        }
+        chain.replaceRequest(request);
+        return false;
+    }
+
+    @Override
+    public void onResponse(HttpFilterChain chain, HttpResponse response) {
+        contentCodings.noteResponse(response);
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When to retry and hedge requests of a {@link LiteHttp},see {@link RetryingCall}.
+ * <p>
+ * Only idempotent methods are retried or hedged.Latencies of successful requests are kept per host for the
+ * hedging delay.
+ */
+final class RetryPolicy {
+
+    /**
+     * hedge only once the host has this many latency samples.
+     */
+    static final int MIN_HEDGE_SAMPLES = 32;
+
+    private volatile long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile long maxBackoffNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile double hedgePercentile;
+
+    private final ConcurrentHashMap<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+
+    void setBackoff(long initialMillis, long maxMillis) {
+        if (initialMillis < 0 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException("invalid backoff " + initialMillis + "," + maxMillis);
+        }
+        this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(initialMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    void setHedgePercentile(double percentile) {
+        if (percentile < 0 || percentile >= 100) {
+            throw new IllegalArgumentException("percentile not in [0,100): " + percentile);
+        }
+        this.hedgePercentile = percentile;
+    }
+
+    /**
+     * Returns true if {@code request} may be retried or hedged.
+     */
+    boolean applies(HttpRequest request) {
+        return isIdempotent(request.method) && (request.retryLimit > 0 || hedgePercentile > 0);
+    }
+
+    static boolean isIdempotent(String method) {
+        switch (method.toUpperCase(Locale.US)) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+            case "TRACE":
+            case "PUT":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if {@code response} is a transient failure worth another attempt.
+     */
+    static boolean isRetryable(HttpResponse response) {
+        return response.code == HttpConst.REQUEST_IO_ERROR || response.code == 503;
+    }
+
+    /**
+     * Delay before retry number {@code retry},0 based,full jitter.
+     */
+    long backoffNanos(int retry, HttpResponse failure) {
+        long ceiling = initialBackoffNanos << Math.min(retry, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        long delay = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+        long retryAfter = Util.retryAfterNanos(failure);
+        if (retryAfter >= 0) {
+            delay = Math.max(delay, Math.min(retryAfter, maxBackoffNanos));
+        }
+        return delay;
+    }
+
+    /**
+     * Nanos to wait before hedging a request to {@code host},-1 for no hedging.
+     */
+    long hedgeDelayNanos(String host) {
+        double percentile = hedgePercentile;
+        if (percentile <= 0) {
+            return -1;
+        }
+        LatencyTracker tracker = latencies.get(host);
+        return tracker == null ? -1 : tracker.percentile(percentile);
+    }
+
+    void recordLatency(String host, long nanos) {
+        if (hedgePercentile <= 0) {
+            return;
+        }
+        LatencyTracker tracker = latencies.get(host);
+        if (tracker == null) {
+            tracker = latencies.computeIfAbsent(host, k -> new LatencyTracker());
+        }
+        tracker.record(nanos);
+    }
+
+    /**
+     * Latest {@link #SIZE} latencies,percentiles are computed again after {@link #REFRESH} new samples.
+     */
+    static final class LatencyTracker {
+        private static final int SIZE = 512;
+        private static final int REFRESH = 64;
+
+        private final long[] samples = new long[SIZE];
+        private int count;
+        private int position;
+        private long[] sorted;
+        private int sinceSorted;
+
+        synchronized void record(long nanos) {
+            samples[position] = nanos;
+            position = (position + 1) % SIZE;
+            if (count < SIZE) {
+                count++;
+            }
+            sinceSorted++;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (count < MIN_HEDGE_SAMPLES) {
+                return -1;
+            }
+            if (sorted == null || sinceSorted >= REFRESH) {
+                sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                sinceSorted = 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+}
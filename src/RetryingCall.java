@@ -0,0 +1,197 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Attempts of one request under a {@link RetryPolicy},the first good response goes on to the filter chain.
+ * Each attempt runs the filters after {@link RetryHttpFilter} on a sub chain,so it passes the limits again.
+ * <p>
+ * Retries wait on the {@link TimerWheel} of the client and run on the request pool,no thread sleeps for a backoff.A hedge is
+ * a second attempt started while the first is still running,whichever finishes first wins,the i/o of the other
+ * is aborted at once so it frees its connection,pool slot and permit.
+ */
+final class RetryingCall {
+
+    private final RetryPolicy policy;
+    private final HttpFilterChain chain;
+    private final HttpRequest request;
+    private final HttpTask task;
+    private final String host;
+    /**
+     * first filter an attempt runs.
+     */
+    private final int next;
+
+    private int inFlight;
+    private int retries;
+    private boolean done;
+    private boolean retryPending;
+    private TimerWheel.Timeout hedgeTimer;
+    private final List<Attempt> attempts = new ArrayList<>(2);
+
+    RetryingCall(RetryPolicy policy, HttpFilterChain chain, HttpRequest request) {
+        this.policy = policy;
+        this.chain = chain;
+        this.request = request;
+        this.task = chain.mTask.task();
+        this.host = request.url.host();
+        this.next = chain.position() + 1;
+    }
+
+    /**
+     * Run the first attempt on the calling thread,or on the request pool if it may be hedged,so a caller
+     * waiting in {@link HttpTask#execute()} gets the response of the hedge without waiting for the first one.
+     */
+    void start() {
+        long hedgeDelay = policy.hedgeDelayNanos(host);
+        synchronized (this) {
+            inFlight++;
+            if (hedgeDelay >= 0) {
+                hedgeTimer = task.timer().schedule(this::hedge, hedgeDelay, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (hedgeDelay >= 0) {
+            task.dispatch("attempt", this::attempt);
+        } else {
+            attempt();
+        }
+    }
+
+    private void attempt() {
+        Attempt attempt = new Attempt();
+        synchronized (this) {
+            attempts.add(attempt);
+        }
+        if (chain.mTask.canceled()) {
+            attempt.accept(task.canceledResponse());
+            return;
+        }
+        new HttpFilterChain(chain, next, request, attempt).start();
+    }
+
+    private void hedge() {
+        synchronized (this) {
+            hedgeTimer = null;
+            if (done || retryPending || chain.mTask.canceled()) {
+                return;
+            }
+            inFlight++;
+        }
+        task.dispatch("hedge", this::attempt);
+    }
+
+    private void onAttemptDone(Attempt attempt, HttpResponse response) {
+        boolean deliver = false;
+        long backoff = -1;
+        Attempt[] losers = null;
+        synchronized (this) {
+            inFlight--;
+            attempts.remove(attempt);
+            if (done) {
+                //lost the race.
+            } else if (response.code == HttpConst.REQUEST_LIMITED && inFlight > 0) {
+                //refused by a limit,the other attempt decides.
+            } else if (chain.mTask.canceled() || !RetryPolicy.isRetryable(response)) {
+                deliver = true;
+            } else if (inFlight > 0) {
+                //the other attempt decides.
+            } else if (retries < request.retryLimit) {
+                backoff = policy.backoffNanos(retries++, response);
+                retryPending = true;
+            } else {
+                deliver = true;
+            }
+            if (deliver) {
+                done = true;
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel();
+                    hedgeTimer = null;
+                }
+                if (!attempts.isEmpty()) {
+                    losers = attempts.toArray(new Attempt[0]);
+                }
+            }
+        }
+        if (deliver) {
+            if (losers != null) {
+                for (Attempt loser : losers) {
+                    loser.abort();
+                }
+            }
+            chain.handleResponse(response);
+            return;
+        }
+        response.close();
+        if (backoff >= 0) {
+            task.timer().schedule(this::retry, backoff, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void retry() {
+        synchronized (this) {
+            retryPending = false;
+            inFlight++;
+        }
+        task.dispatch("retry", this::attempt);
+    }
+
+    /**
+     * One run of the request through the filters after {@link RetryHttpFilter},with the i/o its engine call
+     * attached,see {@link HttpTask#attach}.
+     */
+    final class Attempt implements Consumer<HttpResponse> {
+        private List<Closeable> io;
+        private boolean aborted;
+
+        /**
+         * @return false if the attempt was aborted already,{@code closeable} is closed.
+         */
+        boolean attach(Closeable closeable) {
+            synchronized (this) {
+                if (!aborted) {
+                    if (io == null) {
+                        io = new ArrayList<>(2);
+                    }
+                    io.add(closeable);
+                    return true;
+                }
+            }
+            Util.closeQuietly(closeable);
+            return false;
+        }
+
+        synchronized void detach(Closeable closeable) {
+            if (io != null) {
+                io.remove(closeable);
+            }
+        }
+
+        synchronized boolean aborted() {
+            return aborted;
+        }
+
+        /**
+         * Another attempt won,close the i/o of this one.
+         */
+        void abort() {
+            List<Closeable> aborted;
+            synchronized (this) {
+                this.aborted = true;
+                aborted = io;
+                io = null;
+            }
+            if (aborted != null) {
+                for (Closeable closeable : aborted) {
+                    Util.closeQuietly(closeable);
+                }
+            }
+        }
+
+        @Override
+        public void accept(HttpResponse response) {
+            onAttemptDone(this, response);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Connection pool key: scheme,host and port of a request url.
+ */
+final class Route {
+
+    final String scheme;
+    final String host;
+    final int port;
+
+    Route(String scheme, String host, int port) {
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+    }
+
+    static Route of(RequestUrl url) {
+        return new Route(url.scheme(), url.host(), url.port());
+    }
+
+    boolean isHttps() {
+        return "https".equals(scheme);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Route)) {
+            return false;
+        }
+        Route other = (Route) obj;
+        return port == other.port && scheme.equals(other.scheme) && host.equalsIgnoreCase(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = scheme.hashCode();
+        result = 31 * result + host.toLowerCase().hashCode();
+        result = 31 * result + port;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return scheme + "://" + host + ":" + port;
+    }
+}
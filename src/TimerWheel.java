@@ -0,0 +1,229 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel for the deadlines of {@link LiteHttp},one daemon thread for all timeouts.
+ * <p>
+ * Scheduling and cancelling are O(1) and lock free,a timeout fires on the first tick at or after its deadline,
+ * so up to {@code tick} late.A cancelled timeout is unlinked on the next tick,so its task isn't kept until the
+ * deadline.Tasks run on the wheel thread and must be short.The thread parks while nothing is scheduled.
+ */
+final class TimerWheel {
+
+    static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * A scheduled task.
+     */
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private Runnable task;
+        /**
+         * nanos since the wheel started.
+         */
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+        /**
+         * links within the bucket,-1 while not in one,touched only by the wheel thread.
+         */
+        private int bucket = -1;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Returns false if the task ran already or was cancelled.
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrementAndGet();
+            wheel.cancelled.offer(this);
+            return true;
+        }
+
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    /**
+     * doubly linked timeouts of each bucket,so a cancelled one unlinks at once,touched only by the wheel thread.
+     */
+    private final Timeout[] buckets;
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+    private volatile Thread worker;
+    private long tick;
+
+    TimerWheel() {
+        this(DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param wheelSize rounded up to a power of 2.
+     */
+    TimerWheel(long tickNanos, int wheelSize) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickNanos <= 0: " + tickNanos);
+        }
+        this.tickNanos = tickNanos;
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Run {@code task} on the wheel thread after {@code delay}.
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay)));
+        added.offer(timeout);
+        if (pending.getAndIncrement() == 0) {
+            //wheel may be parked.
+            LockSupport.unpark(worker());
+        }
+        return timeout;
+    }
+
+    /**
+     * Timeouts neither run nor cancelled yet.
+     */
+    int pendingCount() {
+        return pending.get();
+    }
+
+    private Thread worker() {
+        Thread result = worker;
+        if (result == null) {
+            synchronized (this) {
+                result = worker;
+                if (result == null) {
+                    result = Util.threadFactory("LiteHttp TimerWheel", true).newThread(this::run);
+                    worker = result;
+                    result.start();
+                }
+            }
+        }
+        return result;
+    }
+
+    private void run() {
+        tick = (System.nanoTime() - startNanos) / tickNanos;
+        while (true) {
+            if (pending.get() == 0) {
+                //idle,nothing to fire for the ticks passed,drop the cancelled timeouts before parking.
+                tick = (System.nanoTime() - startNanos) / tickNanos;
+                transferAdded();
+                removeCancelled();
+                if (pending.get() == 0) {
+                    LockSupport.park(this);
+                    tick = (System.nanoTime() - startNanos) / tickNanos;
+                }
+                continue;
+            }
+            long now = System.nanoTime() - startNanos;
+            long sleep = (tick + 1) * tickNanos - now;
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+            transferAdded();
+            removeCancelled();
+            long current = now / tickNanos;
+            //a late wake up fires every tick passed,at most a whole round.
+            for (long t = Math.max(tick + 1, current - mask); t <= current; t++) {
+                expire((int) (t & mask), now);
+            }
+            tick = current;
+        }
+    }
+
+    private void transferAdded() {
+        for (Timeout timeout; (timeout = added.poll()) != null; ) {
+            if (timeout.state.get() == Timeout.CANCELLED) {
+                timeout.task = null;
+                continue;
+            }
+            long deadlineTick = Math.max((timeout.deadline + tickNanos - 1) / tickNanos, tick + 1);
+            //ticks up to the next one are handled now.
+            timeout.remainingRounds = (deadlineTick - tick - 1) / buckets.length;
+            int bucket = (int) (deadlineTick & mask);
+            Timeout head = buckets[bucket];
+            timeout.bucket = bucket;
+            timeout.next = head;
+            if (head != null) {
+                head.previous = timeout;
+            }
+            buckets[bucket] = timeout;
+        }
+    }
+
+    private void removeCancelled() {
+        for (Timeout timeout; (timeout = cancelled.poll()) != null; ) {
+            unlink(timeout);
+            timeout.task = null;
+        }
+    }
+
+    private void unlink(Timeout timeout) {
+        int bucket = timeout.bucket;
+        if (bucket < 0) {
+            return;
+        }
+        if (timeout.previous == null) {
+            buckets[bucket] = timeout.next;
+        } else {
+            timeout.previous.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.bucket = -1;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    private void expire(int bucket, long now) {
+        for (Timeout timeout = buckets[bucket]; timeout != null; ) {
+            Timeout next = timeout.next;
+            if (timeout.state.get() == Timeout.CANCELLED) {
+                //cancelled since this tick began,counted already.
+                unlink(timeout);
+            } else if (timeout.remainingRounds > 0 && timeout.deadline > now) {
+                timeout.remainingRounds--;
+            } else {
+                unlink(timeout);
+                if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                    pending.decrementAndGet();
+                    Runnable task = timeout.task;
+                    timeout.task = null;
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            timeout = next;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tls settings of a {@link LiteHttp},set with {@link LiteHttp#setTlsConfig(TlsConfig)}.
+ * <p>
+ * The {@link SSLContext} and its socket factory are built once and shared by all connections,so sessions in its
+ * bounded client session cache can be resumed by later connections to the same host and port,which saves the
+ * full handshake.
+ * <p>
+ * The default configuration trusts every certificate and host name,as LiteHttp always did.With trust managers
+ * given and no hostname verifier,host names are checked against the certificate(HTTPS endpoint identification).
+ */
+public final class TlsConfig {
+
+    static final int DEFAULT_SESSION_CACHE_SIZE = 256;
+    static final long DEFAULT_SESSION_TIMEOUT_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    /**
+     * Config of requests without a {@link LiteHttp}.
+     */
+    static final TlsConfig DEFAULT = new Builder().build();
+
+    private final String protocol;
+    private final TrustManager[] trustManagers;
+    private final KeyManager[] keyManagers;
+    /**
+     * null to verify host names by endpoint identification.
+     */
+    private final HostnameVerifier hostnameVerifier;
+    private final int sessionCacheSize;
+    private final int sessionTimeoutSeconds;
+
+    private volatile SSLSocketFactory socketFactory;
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    private TlsConfig(Builder builder) {
+        protocol = builder.protocol;
+        trustManagers = builder.trustManagers;
+        keyManagers = builder.keyManagers;
+        hostnameVerifier = builder.hostnameVerifier != null || builder.trustManagers != null
+                ? builder.hostnameVerifier : (hostname, session) -> true;
+        sessionCacheSize = builder.sessionCacheSize;
+        sessionTimeoutSeconds = (int) Math.min(builder.sessionTimeoutSeconds, Integer.MAX_VALUE);
+    }
+
+    static TlsConfig of(HttpTask call) {
+        return call != null ? call.tlsConfig() : DEFAULT;
+    }
+
+    /**
+     * The shared socket factory,built on first use.
+     */
+    SSLSocketFactory socketFactory() throws IOException {
+        SSLSocketFactory result = socketFactory;
+        if (result == null) {
+            synchronized (this) {
+                result = socketFactory;
+                if (result == null) {
+                    socketFactory = result = newContext().getSocketFactory();
+                }
+            }
+        }
+        return result;
+    }
+
+    private SSLContext newContext() throws IOException {
+        try {
+            SSLContext context = SSLContext.getInstance(protocol);
+            context.init(keyManagers, trustManagers != null
+                    ? trustManagers : new TrustManager[]{new HttpWorker.AcceptAllTrustManager()}, new SecureRandom());
+            SSLSessionContext sessions = context.getClientSessionContext();
+            if (sessions != null) {
+                sessions.setSessionCacheSize(sessionCacheSize);
+                sessions.setSessionTimeout(sessionTimeoutSeconds);
+            }
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("tls unavailable," + protocol, e);
+        }
+    }
+
+    /**
+     * Layer tls over connected {@code socket},the handshake is done by {@link #handshake}.
+     */
+    SSLSocket createSocket(Socket socket, String host, int port) throws IOException {
+        //host and port key the session cache.
+        SSLSocket sslSocket = (SSLSocket) socketFactory().createSocket(socket, host, port, true);
+        if (hostnameVerifier == null) {
+            SSLParameters parameters = sslSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslSocket.setSSLParameters(parameters);
+        }
+        return sslSocket;
+    }
+
+    /**
+     * Run the handshake of {@code socket},verify the host name and count a full or resumed handshake.
+     */
+    void handshake(SSLSocket socket, String host) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        socket.startHandshake();
+        if (hostnameVerifier != null && !hostnameVerifier.verify(host, socket.getSession())) {
+            throw new SSLPeerUnverifiedException("hostname " + host + " not verified");
+        }
+        //a resumed session was created by an earlier handshake.
+        if (socket.getSession().getCreationTime() < startMillis) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Verifier for {@link javax.net.ssl.HttpsURLConnection},null for its default.
+     */
+    HostnameVerifier hostnameVerifier() {
+        return hostnameVerifier;
+    }
+
+    /**
+     * Handshakes which negotiated a new session.
+     */
+    public long fullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Handshakes which resumed a cached session.
+     */
+    public long resumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    public static class Builder {
+        private String protocol = "TLS";
+        private TrustManager[] trustManagers;
+        private KeyManager[] keyManagers;
+        private HostnameVerifier hostnameVerifier;
+        private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+        private long sessionTimeoutSeconds = DEFAULT_SESSION_TIMEOUT_SECONDS;
+
+        /**
+         * Protocol of {@link SSLContext#getInstance(String)},"TLS" by default.
+         */
+        public Builder protocol(String protocol) {
+            this.protocol = protocol;
+            return this;
+        }
+
+        /**
+         * Trust managers checking the server certificates,every certificate is trusted if none.
+         */
+        public Builder trustManagers(TrustManager... trustManagers) {
+            this.trustManagers = trustManagers;
+            return this;
+        }
+
+        /**
+         * Key managers for client certificates.
+         */
+        public Builder keyManagers(KeyManager... keyManagers) {
+            this.keyManagers = keyManagers;
+            return this;
+        }
+
+        public Builder hostnameVerifier(HostnameVerifier hostnameVerifier) {
+            this.hostnameVerifier = hostnameVerifier;
+            return this;
+        }
+
+        /**
+         * Max sessions kept for resumption,0 for no limit.
+         */
+        public Builder sessionCacheSize(int sessionCacheSize) {
+            if (sessionCacheSize < 0) {
+                throw new IllegalArgumentException("sessionCacheSize < 0: " + sessionCacheSize);
+            }
+            this.sessionCacheSize = sessionCacheSize;
+            return this;
+        }
+
+        /**
+         * How long a session may be resumed,0 for no limit.
+         */
+        public Builder sessionTimeout(long timeout, TimeUnit unit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout < 0: " + timeout);
+            }
+            this.sessionTimeoutSeconds = unit.toSeconds(timeout);
+            return this;
+        }
+
+        public TlsConfig build() {
+            return new TlsConfig(this);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * {@link HttpEngine} on top of {@link java.net.HttpURLConnection},one connection per request.
+ */
+public final class UrlConnectionEngine implements HttpEngine {
+
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+        return HttpWorker.doWork(request);
+    }
+
+    @Override
+    public HttpResponse execute(HttpTask call, HttpRequest request) {
+        return HttpWorker.doWork(request, call);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -1,8 +1,20 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class Util {
     static ThreadFactory threadFactory(String name, boolean daemon) {
@@ -13,6 +25,19 @@ public class Util {
         };
     }
 
+    /**
+     * Executor starting a virtual thread per task,null if the runtime is older than java 21.
+     * <p>
+     * Looked up reflectively so the library still runs on older runtimes.
+     */
+    static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     public static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
     public static final String[] EMPTY_STRING_ARRAY = new String[0];
 
@@ -72,6 +97,36 @@ public class Util {
         return pos;
     }
 
+    static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * Read {@code is} to the end and close it,an empty array for null.
+     */
+    static byte[] readFully(InputStream is) throws IOException {
+        if (is == null) {
+            return EMPTY_BYTE_ARRAY;
+        }
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(is.available(), 32));
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, len);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
     static boolean strIsEmpty(String s) {
         return s == null || "".equals(s);
     }
@@ -101,4 +156,45 @@ public class Util {
         }
         return builder;
     }
+
+    /**
+     * Parse an rfc1123 http date,such as "Sun, 06 Nov 1994 08:49:37 GMT".
+     *
+     * @return epoch millis,-1 if {@code date} is absent or malformed.
+     */
+    static long parseHttpDate(String date) {
+        if (strIsEmpty(date)) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Delay asked by the Retry-After header of {@code response},in delta seconds or as an http date.
+     *
+     * @return nanos,-1 if there is none.
+     */
+    static long retryAfterNanos(HttpResponse response) {
+        String retryAfter = response.header("Retry-After");
+        if (strIsEmpty(retryAfter)) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            long date = parseHttpDate(retryAfter);
+            return date < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(Math.max(0, date - System.currentTimeMillis()));
+        }
+    }
+
+    private static final DateTimeFormatter HTTP_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+    static String formatHttpDate(long millis) {
+        return HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
 }
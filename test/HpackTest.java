@@ -0,0 +1,151 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Round trips of {@link Hpack},with the examples of rfc7541 appendix C.Run as a main,a failed check throws.
+ */
+final class HpackTest {
+
+    public static void main(String[] args) throws Exception {
+        rfcRequestsWithHuffman();
+        huffmanRoundTrip();
+        longValues();
+        sensitiveHeadersNotIndexed();
+        tableSizeUpdate();
+        invalidBlocks();
+        System.out.println("HpackTest ok");
+    }
+
+    /**
+     * rfc7541 C.4,three requests sharing the dynamic table.
+     */
+    private static void rfcRequestsWithHuffman() throws IOException {
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        Hpack.Decoder decoder = new Hpack.Decoder(Integer.MAX_VALUE);
+        roundTrip(encoder, decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff",
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com");
+        roundTrip(encoder, decoder, "828684be5886a8eb10649cbf",
+                ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                "cache-control", "no-cache");
+        roundTrip(encoder, decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf",
+                ":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com",
+                "custom-key", "custom-value");
+    }
+
+    private static void huffmanRoundTrip() throws IOException {
+        byte[] all = new byte[256];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (byte) i;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Hpack.Huffman.encode(all, out);
+        byte[] encoded = out.toByteArray();
+        check(encoded.length == Hpack.Huffman.encodedLength(all), "huffman length " + encoded.length);
+        String decoded = Hpack.Huffman.decode(encoded, 0, encoded.length);
+        check(Arrays.equals(decoded.getBytes("ISO-8859-1"), all), "huffman round trip");
+    }
+
+    /**
+     * Lengths and indexes over the prefix take more bytes.
+     */
+    private static void longValues() throws IOException {
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        Hpack.Decoder decoder = new Hpack.Decoder(Integer.MAX_VALUE);
+        char[] chars = new char[3000];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('!' + i % 90);
+        }
+        String value = new String(chars);
+        for (int i = 0; i < 3; i++) {
+            roundTrip(encoder, decoder, null, "x-long", value, "x-index-" + i, "v" + i);
+        }
+        //a full table,the long entry was evicted.
+        roundTrip(encoder, decoder, null, "x-long", value.substring(1));
+    }
+
+    private static void sensitiveHeadersNotIndexed() throws IOException {
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        Hpack.Decoder decoder = new Hpack.Decoder(Integer.MAX_VALUE);
+        byte[] first = roundTrip(encoder, decoder, null, "authorization", "Bearer abc");
+        byte[] second = roundTrip(encoder, decoder, null, "authorization", "Bearer abc");
+        check((first[0] & 0xf0) == 0x10, "authorization never indexed");
+        check(Arrays.equals(first, second), "authorization not in the table");
+    }
+
+    private static void tableSizeUpdate() throws IOException {
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        Hpack.Decoder decoder = new Hpack.Decoder(Integer.MAX_VALUE);
+        byte[] indexed = roundTrip(encoder, decoder, null, "x-a", "1");
+        encoder.setMaxTableSize(0);
+        byte[] update = roundTrip(encoder, decoder, null, "x-a", "1");
+        check(update[0] == 0x20, "size update first");
+        check(update.length == indexed.length + 1, "entry evicted by the update");
+        //the smallest size since the last block is sent before the final one.
+        encoder.setMaxTableSize(0);
+        encoder.setMaxTableSize(100);
+        byte[] updates = roundTrip(encoder, decoder, null, "x-a", "1");
+        check(updates[0] == 0x20 && updates[1] == 0x3f, "both size updates");
+    }
+
+    private static void invalidBlocks() {
+        expectError(new Hpack.Decoder(Integer.MAX_VALUE), "be", "index of an empty dynamic table");
+        expectError(new Hpack.Decoder(Integer.MAX_VALUE), "80", "index 0");
+        expectError(new Hpack.Decoder(Integer.MAX_VALUE), "418cf1e3", "truncated string");
+        expectError(new Hpack.Decoder(Integer.MAX_VALUE), "3fe926", "table size over the settings");
+        expectError(new Hpack.Decoder(Integer.MAX_VALUE), "ffffffffff0f", "integer overflow");
+        expectError(new Hpack.Decoder(40), "828684418cf1e3c2e5f23a6ba0ab90f4ff", "header list too large");
+    }
+
+    /**
+     * Encode {@code namesAndValues},check the bytes if {@code expectedHex} is given,and decode them back.
+     */
+    private static byte[] roundTrip(Hpack.Encoder encoder, Hpack.Decoder decoder, String expectedHex,
+                                    String... namesAndValues) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(namesAndValues, out);
+        byte[] block = out.toByteArray();
+        if (expectedHex != null) {
+            check(hex(block).equals(expectedHex), "encoded " + hex(block) + " expected " + expectedHex);
+        }
+        List<String> decoded = decoder.decode(block, 0, block.length);
+        check(decoded.equals(Arrays.asList(namesAndValues)), "decoded " + decoded);
+        return block;
+    }
+
+    private static void expectError(Hpack.Decoder decoder, String blockHex, String what) {
+        byte[] block = bytes(blockHex);
+        try {
+            decoder.decode(block, 0, block.length);
+        } catch (ProtocolException expected) {
+            return;
+        } catch (IOException e) {
+            throw new AssertionError(what + ": " + e);
+        }
+        throw new AssertionError(what + " decoded");
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] bytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
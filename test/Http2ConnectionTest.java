@@ -0,0 +1,336 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Frames of {@link Http2Connection} against a scripted server on the loopback,with prior knowledge over http.
+ * Run as a main,a failed check throws.
+ */
+final class Http2ConnectionTest {
+
+    private static final String[] REQUEST = {
+            ":method", "GET", ":scheme", "http", ":path", "/", ":authority", "127.0.0.1"
+    };
+
+    public static void main(String[] args) throws Exception {
+        handshake();
+        exchange();
+        ping();
+        refusedStream();
+        goAway();
+        zeroWindowUpdate();
+        streamWindowOverflow();
+        connectionWindowOverflow();
+        frameTooLarge();
+        System.out.println("Http2ConnectionTest ok");
+    }
+
+    private static void handshake() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            Frame settings = server.settings;
+            check(settings.type == Http2Connection.TYPE_SETTINGS && settings.payload.length % 6 == 0,
+                    "client settings");
+            check(setting(settings, Http2Connection.SETTINGS_ENABLE_PUSH) == 0, "push disabled");
+            check(setting(settings, Http2Connection.SETTINGS_INITIAL_WINDOW_SIZE) == Http2Connection.STREAM_WINDOW,
+                    "stream window");
+            Frame update = server.read();
+            check(update.type == Http2Connection.TYPE_WINDOW_UPDATE && update.streamId == 0, "connection window");
+            server.write(Http2Connection.TYPE_SETTINGS, 0, 0, new byte[0]);
+            Frame ack = server.read();
+            check(ack.type == Http2Connection.TYPE_SETTINGS && ack.flags == Http2Connection.FLAG_ACK, "settings ack");
+            connection.close();
+        }
+    }
+
+    /**
+     * Headers split in a CONTINUATION,a padded DATA frame and the end of the stream.
+     */
+    private static void exchange() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            Http2Connection.Stream stream = open(connection, true);
+            Frame headers = server.read(Http2Connection.TYPE_HEADERS);
+            check((headers.flags & Http2Connection.FLAG_END_STREAM) != 0, "request ends with its headers");
+            check(server.decoder.decode(headers.payload, 0, headers.payload.length).equals(Arrays.asList(REQUEST)),
+                    "request headers");
+
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            server.encoder.encode(new String[]{":status", "200", "content-type", "text/plain"}, block);
+            byte[] bytes = block.toByteArray();
+            int split = bytes.length / 2;
+            server.write(Http2Connection.TYPE_HEADERS, 0, stream.id, Arrays.copyOfRange(bytes, 0, split));
+            server.write(Http2Connection.TYPE_CONTINUATION, Http2Connection.FLAG_END_HEADERS, stream.id,
+                    Arrays.copyOfRange(bytes, split, bytes.length));
+            byte[] padded = new byte[1 + 5 + 3];
+            padded[0] = 3;
+            System.arraycopy("hello".getBytes(StandardCharsets.US_ASCII), 0, padded, 1, 5);
+            server.write(Http2Connection.TYPE_DATA, Http2Connection.FLAG_PADDED, stream.id, padded);
+            server.write(Http2Connection.TYPE_DATA, Http2Connection.FLAG_END_STREAM, stream.id,
+                    "world".getBytes(StandardCharsets.US_ASCII));
+
+            check(stream.awaitHeaders(5000) == 200, "status");
+            check(Collections.singletonList("text/plain").equals(stream.headers().get("content-type")),
+                    "response headers " + stream.headers());
+            check(readBody(stream).equals("helloworld"), "body");
+            check(stream.isFinished(), "finished");
+            connection.close();
+        }
+    }
+
+    private static void ping() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            byte[] payload = {1, 2, 3, 4, 5, 6, 7, 8};
+            server.write(Http2Connection.TYPE_PING, 0, 0, payload);
+            Frame ack = server.read(Http2Connection.TYPE_PING);
+            check(ack.flags == Http2Connection.FLAG_ACK && Arrays.equals(ack.payload, payload), "ping ack");
+            connection.close();
+        }
+    }
+
+    private static void refusedStream() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            Http2Connection.Stream stream = open(connection, true);
+            server.read(Http2Connection.TYPE_HEADERS);
+            server.write(Http2Connection.TYPE_RST_STREAM, 0, stream.id, intPayload(Http2Connection.REFUSED_STREAM));
+            expectError(stream, Http2Connection.RefusedStreamException.class, "refused stream");
+            check(!connection.isShutdown(), "connection still open");
+            connection.close();
+        }
+    }
+
+    private static void goAway() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            Http2Connection.Stream stream = open(connection, true);
+            server.read(Http2Connection.TYPE_HEADERS);
+            byte[] payload = new byte[8];
+            //not processed,the stream may be retried.
+            System.arraycopy(intPayload(Http2Connection.NO_ERROR), 0, payload, 4, 4);
+            server.write(Http2Connection.TYPE_GOAWAY, 0, 0, payload);
+            expectError(stream, Http2Connection.RefusedStreamException.class, "stream after GOAWAY");
+            check(connection.isShutdown(), "no new streams after GOAWAY");
+            connection.close();
+        }
+    }
+
+    private static void zeroWindowUpdate() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            Http2Connection.Stream stream = open(connection, false);
+            connection.flush();
+            server.read(Http2Connection.TYPE_HEADERS);
+            server.write(Http2Connection.TYPE_WINDOW_UPDATE, 0, stream.id, intPayload(0));
+            Frame reset = server.read(Http2Connection.TYPE_RST_STREAM);
+            check(reset.streamId == stream.id && errorCode(reset) == Http2Connection.PROTOCOL_ERROR,
+                    "zero increment resets the stream");
+            expectError(stream, ProtocolException.class, "stream with a zero increment");
+            check(!connection.isShutdown(), "a stream error keeps the connection");
+            connection.close();
+        }
+    }
+
+    private static void streamWindowOverflow() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            Http2Connection.Stream stream = open(connection, false);
+            connection.flush();
+            server.read(Http2Connection.TYPE_HEADERS);
+            server.write(Http2Connection.TYPE_WINDOW_UPDATE, 0, stream.id, intPayload(0x7fffffff));
+            Frame reset = server.read(Http2Connection.TYPE_RST_STREAM);
+            check(reset.streamId == stream.id && errorCode(reset) == Http2Connection.FLOW_CONTROL_ERROR,
+                    "stream window past 2^31-1");
+            expectError(stream, ProtocolException.class, "stream with an overflowed window");
+            connection.close();
+        }
+    }
+
+    private static void connectionWindowOverflow() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            server.write(Http2Connection.TYPE_WINDOW_UPDATE, 0, 0, intPayload(0x7fffffff));
+            Frame goAway = server.read(Http2Connection.TYPE_GOAWAY);
+            check(goAway.payload.length == 8 && errorCode(goAway, 4) == Http2Connection.FLOW_CONTROL_ERROR,
+                    "connection window past 2^31-1");
+            awaitShutdown(connection);
+        }
+    }
+
+    private static void frameTooLarge() throws IOException {
+        try (Server server = new Server()) {
+            Http2Connection connection = server.connect();
+            Http2Connection.Stream stream = open(connection, true);
+            server.read(Http2Connection.TYPE_HEADERS);
+            server.write(Http2Connection.TYPE_DATA, 0, stream.id, new byte[16385]);
+            expectError(stream, IOException.class, "frame over SETTINGS_MAX_FRAME_SIZE");
+            awaitShutdown(connection);
+        }
+    }
+
+    private static Http2Connection.Stream open(Http2Connection connection, boolean endStream) throws IOException {
+        check(connection.reserveStream(0), "stream slot");
+        return connection.newStream(REQUEST, endStream);
+    }
+
+    private static String readBody(Http2Connection.Stream stream) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int read;
+        while ((read = stream.read(buffer, 0, buffer.length, 5000)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static void expectError(Http2Connection.Stream stream, Class<? extends IOException> type, String what) {
+        try {
+            stream.awaitHeaders(5000);
+        } catch (IOException e) {
+            check(type.isInstance(e), what + ": " + e);
+            return;
+        }
+        throw new AssertionError(what + " got headers");
+    }
+
+    private static void awaitShutdown(Http2Connection connection) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!connection.isShutdown()) {
+            check(System.currentTimeMillis() < deadline, "connection not failed");
+            Thread.yield();
+        }
+    }
+
+    private static int setting(Frame settings, int id) {
+        for (int i = 0; i < settings.payload.length; i += 6) {
+            if (((settings.payload[i] & 0xff) << 8 | settings.payload[i + 1] & 0xff) == id) {
+                return errorCode(settings, i + 2);
+            }
+        }
+        return -1;
+    }
+
+    private static int errorCode(Frame frame) {
+        return errorCode(frame, 0);
+    }
+
+    private static int errorCode(Frame frame, int offset) {
+        byte[] p = frame.payload;
+        return (p[offset] & 0xff) << 24 | (p[offset + 1] & 0xff) << 16 | (p[offset + 2] & 0xff) << 8
+                | p[offset + 3] & 0xff;
+    }
+
+    private static byte[] intPayload(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static final class Frame {
+        final int type;
+        final int flags;
+        final int streamId;
+        final byte[] payload;
+
+        Frame(int type, int flags, int streamId, byte[] payload) {
+            this.type = type;
+            this.flags = flags;
+            this.streamId = streamId;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * One h2 connection on the loopback,frames are read and written by the test.
+     */
+    private static final class Server implements AutoCloseable {
+        private final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+        final Hpack.Encoder encoder = new Hpack.Encoder();
+        final Hpack.Decoder decoder = new Hpack.Decoder(Integer.MAX_VALUE);
+        /**
+         * first frame of the client.
+         */
+        Frame settings;
+
+        Server() throws IOException {
+            serverSocket.setSoTimeout(5000);
+        }
+
+        /**
+         * Connect a client and read its preface.
+         */
+        Http2Connection connect() throws IOException {
+            Route route = new Route("http", "127.0.0.1", serverSocket.getLocalPort());
+            Http2Connection connection = Http2Connection.connect(route, 5000, 5000, null, EventListener.NONE);
+            socket = serverSocket.accept();
+            socket.setSoTimeout(5000);
+            in = new DataInputStream(socket.getInputStream());
+            out = new DataOutputStream(socket.getOutputStream());
+            byte[] preface = new byte[24];
+            in.readFully(preface);
+            check(new String(preface, StandardCharsets.US_ASCII).equals("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n"),
+                    "client preface");
+            settings = read();
+            //the server preface.
+            write(Http2Connection.TYPE_SETTINGS, 0, 0, new byte[0]);
+            return connection;
+        }
+
+        Frame read() throws IOException {
+            int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+            int type = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            int streamId = in.readInt() & 0x7fffffff;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            return new Frame(type, flags, streamId, payload);
+        }
+
+        /**
+         * Skip frames until one of {@code type}.
+         */
+        Frame read(int type) throws IOException {
+            while (true) {
+                Frame frame = read();
+                if (frame.type == type) {
+                    return frame;
+                }
+            }
+        }
+
+        void write(int type, int flags, int streamId, byte[] payload) throws IOException {
+            out.write(payload.length >>> 16);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+            out.write(type);
+            out.write(flags);
+            out.writeInt(streamId);
+            out.write(payload);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (socket != null) {
+                socket.close();
+            }
+            serverSocket.close();
+        }
+    }
+}